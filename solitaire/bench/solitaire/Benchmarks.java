@@ -0,0 +1,478 @@
+package solitaire;
+
+import java.awt.BorderLayout;
+import java.awt.Container;
+import java.awt.FlowLayout;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.BoxLayout;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+
+/**
+ * Micro benchmarks of the rules, the piles, the shuffle, the save files
+ * and the two table renderers.
+ * Each benchmark is warmed up, then timed over several rounds. The allocation
+ * of the benchmark thread is read from the JVM, like the JMH GC profiler does.
+ *
+ * Run it headless, with the resources on the classpath:
+ *   java -cp bin:resources solitaire.Benchmarks [name filter]
+ *
+ * "FirstFrame" instead of a filter prints the time from the start of the JVM
+ * to the first painted frame of the table, run it in a new JVM each time.
+ */
+public class Benchmarks {
+
+	static final long WARMUP_NANOS = 1000000000L;
+	static final long ROUND_NANOS = 1000000000L;
+	static final int ROUNDS = 5;
+
+	// Results are added here, so the JIT can not remove the benchmarked code
+	static volatile long sink;
+
+	/**
+	 * A single benchmark, run operations times in a row
+	 */
+	static abstract class Benchmark {
+		final String name;
+
+		Benchmark(String name) {
+			this.name = name;
+		}
+
+		void setup() throws Exception {}
+
+		abstract long run(int operations) throws Exception;
+	}
+
+	static List<Benchmark> benchmarks() {
+		List<Benchmark> list = new ArrayList<Benchmark>();
+
+		list.add(new Benchmark("Pile.acceptsPile") {
+			// Volatile, so the JIT can not hoist the check out of the loop
+			volatile Pile column, drag;
+
+			void setup() {
+				Engine game = new Engine();
+				game.resetCards(1);
+				game.setupGame();
+
+				// A red 9 dragged on a black 10
+				game.table.clear();
+				game.table.push(Table.TABLEAU, Table.card(10, 0), false);
+				game.table.push(Table.TABLEAU + 1, Table.card(9, 1), false);
+
+				Card[] views = cardViews();
+				column = pileView(game, Table.TABLEAU, views);
+				Pile source = pileView(game, Table.TABLEAU + 1, views);
+				drag = source.split(source.peekTopCard(), new Pile(100));
+			}
+
+			long run(int operations) {
+				long accepted = 0;
+				for(int i = 0; i < operations; ++i) {
+					if(column.acceptsPile(drag)) accepted++;
+				}
+				return accepted;
+			}
+		});
+
+		list.add(new Benchmark("Pile.split/merge") {
+			Pile column, drag;
+
+			void setup() {
+				Engine game = new Engine();
+				game.resetCards(1);
+				game.setupGame();
+				column = pileView(game, Table.TABLEAU + 6, cardViews());
+				drag = new Pile(100);
+			}
+
+			long run(int operations) {
+				for(int i = 0; i < operations; ++i) {
+					column.split(column.cards.get(column.cards.size() - 1), drag);
+					column.merge(drag);
+				}
+				return column.cards.size();
+			}
+		});
+
+		list.add(new Benchmark("Pile.drawCard (24 cards)") {
+			Pile stock;
+
+			void setup() {
+				Engine game = new Engine();
+				game.resetCards(1);
+				game.setupGame();
+				stock = pileView(game, Table.STOCK, cardViews());
+				stock.setOffset(0);
+			}
+
+			long run(int operations) {
+				for(int i = 0; i < operations; ++i)
+					stock.addCard(stock.drawCard());
+				return stock.cards.size();
+			}
+		});
+
+		list.add(new Benchmark("Deck.shuffle") {
+			Deck deck = new Deck();
+
+			long run(int operations) {
+				for(int i = 0; i < operations; ++i)
+					deck.shuffle(i);
+				return deck.cards[0];
+			}
+		});
+
+		list.add(new Benchmark("Engine.setupGame") {
+			Engine game = new Engine();
+
+			long run(int operations) {
+				for(int i = 0; i < operations; ++i) {
+					game.resetCards(i);
+					game.setupGame();
+				}
+				return game.table.hash();
+			}
+		});
+
+		list.add(new Benchmark("Engine.checkWin") {
+			volatile Engine game = new Engine();
+
+			void setup() {
+				game.setupGame();
+			}
+
+			long run(int operations) {
+				long won = 0;
+				for(int i = 0; i < operations; ++i) {
+					if(game.checkWin()) won++;
+				}
+				return won;
+			}
+		});
+
+		list.add(new Benchmark("Engine.legalMoves") {
+			Engine game = new Engine();
+			int[] moves = new int[Move.MAX_MOVES];
+
+			void setup() {
+				game.resetCards(1);
+				game.setupGame();
+			}
+
+			long run(int operations) {
+				long count = 0;
+				for(int i = 0; i < operations; ++i)
+					count += game.legalMoves(moves);
+				return count;
+			}
+		});
+
+		list.add(new Benchmark("Engine.applyMove/undoMove") {
+			Engine game = new Engine();
+			int[] moves = new int[Move.MAX_MOVES];
+			int count;
+
+			void setup() {
+				game.resetCards(1);
+				game.setupGame();
+				count = game.legalMoves(moves);
+			}
+
+			long run(int operations) {
+				for(int i = 0; i < operations; ++i) {
+					int move = moves[i % count];
+					game.applyMove(move);
+					game.undoMove(move);
+				}
+				return game.table.hash();
+			}
+		});
+
+		list.add(new Benchmark("Engine.save/load") {
+			Engine game = new Engine();
+
+			void setup() throws Exception {
+				game.resetCards(1);
+				game.setupGame();
+				game.saveFile = File.createTempFile("solitaire", ".sav");
+				game.saveFile.deleteOnExit();
+			}
+
+			long run(int operations) {
+				for(int i = 0; i < operations; ++i) {
+					game.save();
+					game.load();
+				}
+				return game.table.hash();
+			}
+		});
+
+		list.add(new RenderBenchmark("Render.components paint", false, false));
+		list.add(new RenderBenchmark("Render.canvas paint", true, false));
+		list.add(new RenderBenchmark("Render.components layout", false, true));
+		list.add(new RenderBenchmark("Render.canvas layout", true, true));
+
+		return list;
+	}
+
+	/**
+	 * Paints or lays out a whole table of the middle of a game,
+	 * with one component per card or with the TableCanvas
+	 */
+	static class RenderBenchmark extends Benchmark {
+		final boolean canvas, layout;
+		JComponent root;
+		BufferedImage frame;
+		Graphics2D g;
+
+		RenderBenchmark(String name, boolean canvas, boolean layout) {
+			super(name);
+			this.canvas = canvas;
+			this.layout = layout;
+		}
+
+		void setup() {
+			root = canvas ? tableCanvas(playedGame()) : componentTree(playedGame());
+			frame = new BufferedImage(900, 700, BufferedImage.TYPE_INT_RGB);
+			g = frame.createGraphics();
+		}
+
+		long run(int operations) {
+			for(int i = 0; i < operations; ++i) {
+				if(layout) {
+					layoutTree(root);
+				} else {
+					root.paint(g);
+				}
+			}
+			return frame.getRGB(450, 350);
+		}
+	}
+
+	/**
+	 * Returns deal 1 after some moves, with long columns and a get pile
+	 */
+	static Engine playedGame() {
+		Engine game = new Engine();
+		game.resetCards(1);
+		game.setupGame();
+
+		int[] moves = new int[Move.MAX_MOVES];
+		for(int i = 0; i < 40; ++i) {
+			int count = game.legalMoves(moves);
+			if(count == 0) break;
+			game.applyMove(moves[i % count]);
+		}
+		return game;
+	}
+
+	/**
+	 * Builds the components of the GUI for a game, laid out in a 900x700 panel
+	 */
+	static JComponent componentTree(Engine game) {
+		Card[] views = cardViews();
+
+		FlowLayout flow = new FlowLayout(FlowLayout.CENTER);
+		flow.setAlignOnBaseline(true);
+		JPanel columns = new JPanel(flow);
+		columns.setOpaque(false);
+
+		FlowLayout topFlow = new FlowLayout(FlowLayout.LEFT);
+		topFlow.setAlignOnBaseline(true);
+		JPanel topColumns = new JPanel(topFlow);
+		topColumns.setOpaque(false);
+
+		JPanel gameArea = new JPanel();
+		gameArea.setOpaque(false);
+		gameArea.setLayout(new BoxLayout(gameArea, BoxLayout.PAGE_AXIS));
+		gameArea.add(topColumns);
+		gameArea.add(columns);
+
+		for(int i = 0; i < Table.COLUMNS; ++i)
+			columns.add(pileView(game, Table.TABLEAU + i, views, 120, 15));
+
+		topColumns.add(pileView(game, Table.STOCK, views, 120, 0));
+		topColumns.add(pileView(game, Table.WASTE, views, 180, 0));
+		for(int i = 0; i < Table.FOUNDATIONS; ++i)
+			topColumns.add(pileView(game, Table.FOUNDATION + i, views, 100, 0));
+
+		JPanel root = new JPanel(new BorderLayout());
+		root.add(gameArea);
+		root.setSize(900, 700);
+		layoutTree(root);
+		return root;
+	}
+
+	static JComponent tableCanvas(Engine game) {
+		JPanel root = new JPanel(new BorderLayout());
+		root.add(new TableCanvas(null, game));
+		root.setSize(900, 700);
+		layoutTree(root);
+		return root;
+	}
+
+	/**
+	 * Lays out a component tree, validate() does nothing while
+	 * the components are not in a window
+	 */
+	static void layoutTree(Container c) {
+		c.doLayout();
+		for(int i = 0; i < c.getComponentCount(); ++i) {
+			if(c.getComponent(i) instanceof Container)
+				layoutTree((Container)c.getComponent(i));
+		}
+	}
+
+	/**
+	 * Prints the heap kept by the views of one table and the cards painted
+	 * for a frame, for both renderers
+	 */
+	static void printRenderStats() {
+		final int tables = 50;
+
+		for(int canvas = 0; canvas < 2; ++canvas) {
+			Engine[] games = new Engine[tables];
+			for(int i = 0; i < tables; ++i)
+				games[i] = playedGame();
+
+			long before = usedHeap();
+			JComponent[] roots = new JComponent[tables];
+			for(int i = 0; i < tables; ++i)
+				roots[i] = canvas == 1 ? tableCanvas(games[i]) : componentTree(games[i]);
+			long after = usedHeap();
+
+			System.out.printf("%-28s %14.1f KB/table%n", canvas == 1 ? "Render.canvas heap" : "Render.components heap",
+					(after - before) / 1024.0 / tables);
+
+			// Card images painted for one frame of the whole table
+			BufferedImage frame = new BufferedImage(900, 700, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = frame.createGraphics();
+			long paints = CardImages.paintCalls;
+			roots[0].paint(g);
+			g.dispose();
+
+			System.out.printf("%-28s %14d cards/frame%n", canvas == 1 ? "Render.canvas paint calls" : "Render.components paint calls",
+					CardImages.paintCalls - paints);
+			sink += roots.length;
+		}
+	}
+
+	/**
+	 * Prints the time to the first frame of a new game, painted offscreen
+	 * like the window would be: the images are loaded by the first paint
+	 */
+	static void printFirstFrame() {
+		Engine game = new Engine();
+		game.setupGame();
+
+		JComponent root = componentTree(game);
+		BufferedImage frame = new BufferedImage(900, 700, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = frame.createGraphics();
+		g.drawImage(CardImages.background(), 0, 0, null);
+		root.paint(g);
+		g.dispose();
+
+		long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		System.out.println("First frame: " + elapsed + " ms after start");
+	}
+
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; ++i)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static Card[] cardViews() {
+		Card[] views = new Card[Table.CARDS];
+		for(int card = 0; card < Table.CARDS; ++card)
+			views[card] = new Card(Table.value(card), Card.Suit.values()[Table.suit(card)]);
+		return views;
+	}
+
+	static Pile pileView(Engine game, int index, Card[] views) {
+		return pileView(game, index, views, 100, 15);
+	}
+
+	static Pile pileView(Engine game, int index, Card[] views, int width, int offset) {
+		Pile p = new Pile(width);
+		p.table = game.table;
+		p.index = index;
+		p.setOffset(offset);
+		p.sync(views);
+		return p;
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the current thread
+	 */
+	static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs the benchmark for about the given time
+	 * @return {Long[]} Number of operations, elapsed nanoseconds, allocated bytes
+	 */
+	static long[] measure(Benchmark b, long nanos) throws Exception {
+		long operations = 0;
+		int batch = 1;
+		long allocated = allocatedBytes();
+		long begin = System.nanoTime();
+		long elapsed;
+
+		while((elapsed = System.nanoTime() - begin) < nanos) {
+			sink += b.run(batch);
+			operations += batch;
+			if(batch < (1 << 20)) batch *= 2;
+		}
+
+		return new long[] {operations, elapsed, allocatedBytes() - allocated};
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		String filter = args.length > 0 ? args[0] : "";
+
+		if(filter.equals("FirstFrame")) {
+			printFirstFrame();
+			return;
+		}
+
+		System.out.printf("%-28s %14s %12s %14s%n", "Benchmark", "ns/op", "+/-", "B/op");
+
+		for(Benchmark b : benchmarks()) {
+			if(!b.name.contains(filter)) continue;
+
+			b.setup();
+			measure(b, WARMUP_NANOS);
+
+			double[] rounds = new double[ROUNDS];
+			long operations = 0, allocated = 0;
+			for(int r = 0; r < ROUNDS; ++r) {
+				long[] m = measure(b, ROUND_NANOS);
+				rounds[r] = (double)m[1] / m[0];
+				operations += m[0];
+				allocated += m[2];
+			}
+
+			double mean = 0, deviation = 0;
+			for(double t : rounds) mean += t / ROUNDS;
+			for(double t : rounds) deviation += (t - mean) * (t - mean) / ROUNDS;
+
+			System.out.printf("%-28s %14.2f %12.2f %14.1f%n",
+					b.name, mean, Math.sqrt(deviation), (double)allocated / operations);
+		}
+
+		if("Render".contains(filter) || filter.startsWith("Render")) printRenderStats();
+	}
+}
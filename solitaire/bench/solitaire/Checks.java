@@ -0,0 +1,245 @@
+package solitaire;
+
+import java.awt.Container;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Headless checks of the packed rules, the save files and the drop targets,
+ * to run after changing Table, Move, Snapshot, Journal or DropIndex.
+ * Random games are played from several deals, every position is checked.
+ * The failed checks are printed, the exit status is 1 if there was any.
+ *
+ * Run it with the resources on the classpath:
+ *   java -cp bin:resources solitaire.Checks
+ */
+public class Checks {
+
+	static final int DEALS = 20;
+	static final int MOVES = 2000;
+
+	// Deals also played through a journal
+	static final int JOURNALED = 3;
+
+	static int failures;
+
+	static void check(boolean ok, String what) {
+		if(ok) return;
+
+		failures++;
+		if(failures <= 20) System.out.println("Failed: " + what);
+	}
+
+	/**
+	 * legalMoves returns every move allowed by canMove, flip and the draw pile,
+	 * each once, and nothing else
+	 * @param {Table} t
+	 * @param {String} where The position, for the messages
+	 */
+	static void legalMoves(Table t, String where) {
+		int[] moves = new int[Move.MAX_MOVES];
+		int n = t.legalMoves(moves);
+
+		int expected = 0;
+
+		for(int src = 0; src < Table.PILES; ++src) {
+			int size = t.size(src);
+
+			for(int start = 0; start < size; ++start) {
+				for(int dst = Table.TABLEAU; dst < Table.STOCK; ++dst) {
+					if(!t.canMove(src, start, dst)) continue;
+
+					expected++;
+					check(count(moves, n, Move.of(src, dst, size - start)) == 1,
+							where + ": " + Move.toString(Move.of(src, dst, size - start)) + " allowed by canMove");
+				}
+			}
+
+			// A face-down top card can only be turned
+			if(Table.isTableau(src) && size > 0 && t.isFaceDown(src, size - 1)) {
+				expected++;
+				check(count(moves, n, Move.flip(src)) == 1, where + ": flip of pile " + src);
+			}
+		}
+
+		if(t.size(Table.STOCK) > 0) {
+			expected++;
+			check(count(moves, n, Move.of(Table.STOCK, Table.WASTE, 1)) == 1, where + ": draw");
+		} else if(t.size(Table.WASTE) > 0) {
+			expected++;
+			check(count(moves, n, Move.of(Table.WASTE, Table.STOCK, t.size(Table.WASTE))) == 1, where + ": turn");
+		}
+
+		check(n == expected, where + ": " + n + " legal moves, " + expected + " expected");
+	}
+
+	/**
+	 * Every legal move is undone exactly: the same bytes and the same hash.
+	 * The hash updated by apply is the hash of the same table built from scratch.
+	 * @param {Table} t
+	 * @param {String} where
+	 */
+	static void undo(Table t, String where) {
+		int[] moves = new int[Move.MAX_MOVES];
+		int n = t.legalMoves(moves);
+		byte[] before = t.data.clone();
+		long hash = t.hash();
+
+		for(int i = 0; i < n; ++i) {
+			t.apply(moves[i]);
+			check(t.hash() == snapshot(t, 0, where).hash(), where + ": hash after " + Move.toString(moves[i]));
+
+			t.undo(moves[i]);
+			check(Arrays.equals(before, t.data) && t.hash() == hash, where + ": undo of " + Move.toString(moves[i]));
+		}
+	}
+
+	/**
+	 * A snapshot reads back the same table and deal
+	 * @param {Table} t
+	 * @param {Long} deal
+	 * @param {String} where
+	 * @return {Table} The table read back
+	 */
+	static Table snapshot(Table t, long deal, String where) {
+		byte[] buffer = new byte[Snapshot.MAX_SIZE];
+		int length = Snapshot.write(t, deal, buffer, 0);
+		Table copy = new Table();
+
+		try {
+			check(Snapshot.read(buffer, 0, length, copy) == deal, where + ": deal of the snapshot");
+			check(Arrays.equals(t.data, copy.data), where + ": snapshot");
+		} catch(IOException e) {
+			check(false, where + ": snapshot, " + e.getMessage());
+		}
+		return copy;
+	}
+
+	/**
+	 * A journaled game, with undos, is recovered in the same state
+	 * @param {Integer} deal
+	 * @param {Random} random
+	 */
+	static void journal(int deal, Random random) throws IOException {
+		File file = File.createTempFile("solitaire", ".journal");
+		file.deleteOnExit();
+		String where = "journal of deal " + deal;
+
+		Engine game = new Engine();
+		game.openJournal(file);
+		game.resetCards(deal);
+		game.setupGame();
+
+		int[] moves = new int[Move.MAX_MOVES];
+		for(int i = 0; i < MOVES; ++i) {
+			int n = game.legalMoves(moves);
+			if(n == 0) break;
+
+			game.play(moves[random.nextInt(n)]);
+			if(random.nextInt(10) == 0) game.undo();
+		}
+		game.journal.close();
+
+		Engine recovered = new Engine();
+		check(recovered.openJournal(file), where + ": no game recovered");
+		check(recovered.dealNumber == game.dealNumber, where + ": deal number");
+		check(Arrays.equals(game.table.data, recovered.table.data), where + ": table");
+		recovered.journal.close();
+	}
+
+	/**
+	 * The drop index finds every column and foundation under its cards,
+	 * also in windows narrow enough to wrap the columns on two rows
+	 * @param {Engine} game
+	 */
+	static void dropIndex(Engine game) {
+		for(int width : new int[] {1000, 860, 800, 700, 500}) {
+			JComponent root = Benchmarks.componentTree(game);
+			root.setSize(width, 700);
+			Benchmarks.layoutTree(root);
+
+			// The same piles as in the GUI: top row, then the columns
+			Container gameArea = (Container)root.getComponent(0);
+			Container top = (Container)gameArea.getComponent(0);
+			Container columns = (Container)gameArea.getComponent(1);
+
+			Pile[] targets = new Pile[Table.COLUMNS + Table.FOUNDATIONS];
+			for(int i = 0; i < Table.COLUMNS; ++i)
+				targets[i] = (Pile)columns.getComponent(i);
+			for(int i = 0; i < Table.FOUNDATIONS; ++i) {
+				targets[Table.COLUMNS + i] = (Pile)top.getComponent(2 + i);
+				targets[Table.COLUMNS + i].type = Pile.PileType.Final;
+			}
+
+			DropIndex index = new DropIndex(targets, root);
+			for(Pile p : targets) {
+				Rectangle r = SwingUtilities.convertRectangle(p.getParent(), p.getBounds(), root);
+
+				// Both sides of the pile, the rows are not aligned
+				for(int x = r.x + 1; x < r.x + r.width; x += r.width - 2) {
+					check(index.find(x, r.y + r.height / 2) == p,
+							"width " + width + ": drop on pile " + p.index + " at x " + x);
+				}
+			}
+		}
+	}
+
+	static int count(int[] moves, int n, int move) {
+		int found = 0;
+		for(int i = 0; i < n; ++i) {
+			if(moves[i] == move) found++;
+		}
+		return found;
+	}
+
+	public static void main(String[] args) throws IOException {
+		long begin = System.currentTimeMillis();
+		Random random = new Random(1);
+		int[] moves = new int[Move.MAX_MOVES];
+		int[] played = new int[MOVES];
+		int positions = 0;
+
+		for(int deal = 1; deal <= DEALS; ++deal) {
+			Engine game = new Engine();
+			game.resetCards(deal);
+			game.setupGame();
+
+			Table start = new Table();
+			start.copyFrom(game.table);
+			int count = 0;
+
+			for(; count < MOVES; ++count) {
+				String where = "deal " + deal + ", move " + count;
+				legalMoves(game.table, where);
+				undo(game.table, where);
+				snapshot(game.table, deal, where);
+				positions++;
+
+				int n = game.table.legalMoves(moves);
+				if(n == 0) break;
+
+				played[count] = moves[random.nextInt(n)];
+				game.applyMove(played[count]);
+			}
+
+			// The whole game undone goes back to the deal
+			for(int i = count - 1; i >= 0; --i)
+				game.undoMove(played[i]);
+			check(Arrays.equals(start.data, game.table.data) && start.hash() == game.table.hash(),
+					"deal " + deal + ": undo of the whole game");
+
+			if(deal <= JOURNALED) journal(deal, random);
+			if(deal == 1) dropIndex(game);
+		}
+
+		System.out.println(positions + " positions checked in " + (System.currentTimeMillis() - begin)
+				+ " ms, " + failures + " failures");
+		if(failures > 0) System.exit(1);
+	}
+}
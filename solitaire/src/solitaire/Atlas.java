@@ -0,0 +1,216 @@
+package solitaire;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * All the images of the game packed in a single file: the card faces,
+ * the back and the background. The pixels are stored as raw ARGB ints,
+ * so loading the atlas is one copy of a memory mapped file, without
+ * decoding any PNG. The images are sub-images of the atlas.
+ *
+ * The file is made by a build step, from the resources folder:
+ *   java -cp bin solitaire.Atlas resources
+ *
+ * Layout, big endian:
+ *   "SOLA", version, width, height, offset of the pixels, count
+ *   count entries: name (UTF), x, y, width, height
+ *   width * height ARGB ints
+ */
+public class Atlas {
+
+	static final int MAGIC = 0x534F4C41;
+	static final int VERSION = 1;
+
+	// Path of the atlas, next to the images it replaces
+	static final String FILE = "images/cards.atlas";
+
+	final BufferedImage image;
+	final Map<String, BufferedImage> images = new HashMap<String, BufferedImage>();
+
+	Atlas(ByteBuffer buffer) throws IOException {
+		if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			throw new IOException("Not an atlas of this version");
+
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int offset = buffer.getInt();
+		int count = buffer.getInt();
+
+		// A single copy into the pixels of the image
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+
+		for(int i = 0; i < count; ++i) {
+			String name = readUTF(buffer);
+			int x = buffer.getInt(), y = buffer.getInt();
+			int w = buffer.getInt(), h = buffer.getInt();
+			images.put(name, image.getSubimage(x, y, w, h));
+		}
+
+		buffer.position(offset);
+		buffer.asIntBuffer().get(pixels);
+	}
+
+	/**
+	 * Returns an image of the atlas, eg: "cards/k of diamonds" or "background"
+	 * @param {String} name The path of the image in the images folder, without extension
+	 * @return {BufferedImage} The sub-image, or null
+	 */
+	public BufferedImage image(String name) {
+		return images.get(name);
+	}
+
+	/**
+	 * Loads the atlas from the class path. The file is memory mapped
+	 * when it is not inside a jar.
+	 * @return {Atlas} The atlas, or null if it was not built
+	 */
+	public static Atlas load() {
+		URL url = Atlas.class.getResource("../" + FILE);
+		if(url == null || "false".equals(System.getProperty("solitaire.atlas"))) return null;
+
+		FileChannel channel = null;
+		InputStream in = null;
+		try {
+			if("file".equals(url.getProtocol())) {
+				channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ);
+				return new Atlas(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+
+			in = url.openStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+			byte[] chunk = new byte[1 << 16];
+			for(int n; (n = in.read(chunk)) != -1;)
+				bytes.write(chunk, 0, n);
+			return new Atlas(ByteBuffer.wrap(bytes.toByteArray()));
+		} catch(IOException e) {
+			e.printStackTrace();
+			return null;
+		} catch(URISyntaxException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			Engine.close(channel);
+			Engine.close(in);
+		}
+	}
+
+	private static String readUTF(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Packs the images of a resources folder into its atlas file.
+	 * The images are placed in rows, as wide as the widest image.
+	 * @param {File} resources The folder containing "images"
+	 * @return {File} The atlas file
+	 */
+	public static File pack(File resources) throws IOException {
+		File folder = new File(resources, "images");
+		List<String> names = new ArrayList<String>();
+		List<BufferedImage> sources = new ArrayList<BufferedImage>();
+
+		File[] cards = new File(folder, "cards").listFiles();
+		if(cards == null) throw new IOException("No card images in " + folder);
+		Arrays.sort(cards);
+
+		for(File f : cards) {
+			if(!f.getName().endsWith(".png")) continue;
+			names.add("cards/" + f.getName().substring(0, f.getName().length() - 4));
+			sources.add(ImageIO.read(f));
+		}
+		names.add("background");
+		sources.add(ImageIO.read(new File(folder, "background.jpg")));
+
+		int width = 0;
+		for(BufferedImage source : sources)
+			width = Math.max(width, source.getWidth());
+
+		// Place the images row by row
+		int[][] places = new int[sources.size()][];
+		int x = 0, y = 0, rowHeight = 0;
+		for(int i = 0; i < sources.size(); ++i) {
+			BufferedImage source = sources.get(i);
+			if(x + source.getWidth() > width) {
+				x = 0;
+				y += rowHeight;
+				rowHeight = 0;
+			}
+			places[i] = new int[] {x, y, source.getWidth(), source.getHeight()};
+			x += source.getWidth();
+			rowHeight = Math.max(rowHeight, source.getHeight());
+		}
+		int height = y + rowHeight;
+
+		BufferedImage atlas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = atlas.createGraphics();
+		for(int i = 0; i < sources.size(); ++i)
+			g.drawImage(sources.get(i), places[i][0], places[i][1], null);
+		g.dispose();
+
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		DataOutputStream entries = new DataOutputStream(index);
+		for(int i = 0; i < sources.size(); ++i) {
+			entries.writeUTF(names.get(i));
+			for(int value : places[i])
+				entries.writeInt(value);
+		}
+		entries.flush();
+
+		File file = new File(resources, FILE);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			DataOutputStream header = new DataOutputStream(out);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(width);
+			header.writeInt(height);
+			header.writeInt(6 * 4 + index.size());
+			header.writeInt(sources.size());
+			index.writeTo(header);
+			header.flush();
+
+			int[] pixels = ((DataBufferInt)atlas.getRaster().getDataBuffer()).getData();
+			ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4);
+			IntBuffer ints = bytes.asIntBuffer();
+			ints.put(pixels);
+			out.write(bytes.array());
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File resources = new File(args.length > 0 ? args[0] : "resources");
+		File file = pack(resources);
+
+		System.out.println("Packed " + file + ", " + file.length() / 1024 + " KB");
+	}
+}
@@ -0,0 +1,94 @@
+package solitaire;
+
+import java.util.Random;
+
+/**
+ * A strategy that plays games on its own, used by the Simulation runner.
+ * A bot instance is only used by one thread at a time.
+ */
+public interface Bot {
+
+	/**
+	 * Called before each game. The seed only depends on the game,
+	 * so runs can be reproduced whatever thread plays the game.
+	 * @param {Long} seed
+	 */
+	void newGame(long seed);
+
+	/**
+	 * Chooses the next move
+	 * @param {Table} table The current state, must not be changed
+	 * @param {Integer[]} moves The legal moves, see Table.legalMoves
+	 * @param {Integer} count The number of legal moves
+	 * @return {Integer} The chosen move, or -1 to give up the game
+	 */
+	int chooseMove(Table table, int[] moves, int count);
+
+	/**
+	 * Returns a new bot of the same kind, for another thread
+	 */
+	Bot copy();
+
+	/**
+	 * Plays a random legal move, but always turns face-down cards
+	 */
+	class RandomMoves implements Bot {
+		Random random = new Random();
+
+		public void newGame(long seed) {
+			random.setSeed(seed);
+		}
+
+		public int chooseMove(Table table, int[] moves, int count) {
+			for(int i = 0; i < count; ++i) {
+				if(Move.isFlip(moves[i])) return moves[i];
+			}
+			return moves[random.nextInt(count)];
+		}
+
+		public Bot copy() {
+			return new RandomMoves();
+		}
+
+		public String toString() {
+			return "random";
+		}
+	}
+
+	/**
+	 * Plays the best move by the solver move ordering: foundations first,
+	 * then moves which uncover a card, then the get pile, then drawing.
+	 * Moves of part of a run between columns are never played,
+	 * so the bot does not move cards back and forth.
+	 */
+	class Greedy implements Bot {
+
+		public void newGame(long seed) {}
+
+		public int chooseMove(Table table, int[] moves, int count) {
+			int best = -1;
+			int bestPriority = Solver.PRIORITY_LEVELS;
+
+			for(int i = 0; i < count; ++i) {
+				if(Move.isFlip(moves[i])) return moves[i];
+
+				int priority = Solver.priority(table, moves[i]);
+				if(priority == 3) continue;
+
+				if(priority < bestPriority) {
+					best = moves[i];
+					bestPriority = priority;
+				}
+			}
+			return best;
+		}
+
+		public Bot copy() {
+			return new Greedy();
+		}
+
+		public String toString() {
+			return "greedy";
+		}
+	}
+}
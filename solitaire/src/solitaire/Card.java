@@ -2,12 +2,10 @@ package solitaire;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.net.URL;
 
-import javax.imageio.ImageIO;
 import javax.swing.JPanel;
 
 /**
@@ -20,7 +18,18 @@ public class Card extends JPanel{
 		public int value;
 		public Suit suit;
 		private BufferedImage image;
-		private BufferedImage backImage;
+		
+		// The image last painted, ready for the size and the display scale
+		private BufferedImage painted;
+		private int paintedWidth, paintedHeight;
+		private double paintedScale;
+		private boolean paintedReversed;
+		
+		// Height of the strip not covered by the next card of the pile, 0 if none is on top
+		int visibleHeight;
+		
+		// The card below shows through the rounded corners of the card on top
+		static final int CORNER = 6;
 		boolean isReversed;
 		Point positionOffset;
 		
@@ -78,14 +87,6 @@ public class Card extends JPanel{
 			return valueString(value) + " of " + suit.name();
 		}
 		
-		/**
-		 * Returns a string that can be used to re-initialize the card
-		 * @return {String} Class properties, " of " separated.
-		 */
-		public String saveAsString() {
-			return valueString(value) + " of " + suit.name() + " of " + isReversed;
-		}
-		
 		/**
 		 * Class constructor
 		 * @param {Integer} value The value of the card, in [1,14]
@@ -96,19 +97,11 @@ public class Card extends JPanel{
 			this.suit = suit;		
 			isReversed = false;
 			
-			try {
-				// Load the image for the current file
-				URL url = getClass().getResource("../images/cards/" + this.toString() + ".png");
-				image = ImageIO.read(url);
-				
-				// Load the backimage
-				url = getClass().getResource("../images/cards/back.png");
-				backImage = ImageIO.read(url);
-				
+			// Images are decoded once and shared between all the cards
+			image = CardImages.face(value, suit);
+			
+			if(image != null)
 				setBounds(0, 0, image.getWidth(), image.getHeight());
-			} catch(IOException e) {
-				e.printStackTrace();
-			}
 			
 			positionOffset = new Point(0,0);
 			setSize(new Dimension(100, 145));
@@ -133,10 +126,29 @@ public class Card extends JPanel{
 		protected void paintComponent(Graphics g) {
 			super.paintComponent(g);
 			
-			BufferedImage img = image;
-			if(isReversed) img = backImage;
-
-			g.drawImage(img, 0, 0, this.getWidth(), this.getHeight(), null);
+			Graphics2D g2 = (Graphics2D)g;
+			int width = getWidth(), height = getHeight();
+			double scale = CardImages.scale(g2);
+			
+			// The prepared image is looked up only when something changed
+			if(painted == null || paintedWidth != width || paintedHeight != height
+					|| paintedScale != scale || paintedReversed != isReversed) {
+				if(isReversed)
+					painted = CardImages.back(width, height, g2);
+				else
+					painted = CardImages.face(value, suit, width, height, g2);
+				
+				if(painted == null) return;
+				paintedWidth = width;
+				paintedHeight = height;
+				paintedScale = scale;
+				paintedReversed = isReversed;
+			}
+			
+			if(visibleHeight > 0 && visibleHeight < height)
+				CardImages.draw(g2, painted, 0, 0, width, height, visibleHeight);
+			else
+				CardImages.draw(g2, painted, 0, 0, width, height);
 		}
 	
 }
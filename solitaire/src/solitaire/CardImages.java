@@ -0,0 +1,202 @@
+package solitaire;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import solitaire.Card.Suit;
+
+/**
+ * Process-wide cache for the card images.
+ * Every image is loaded only once, the first time the class is used,
+ * and is then shared by all the Card instances. The images come from the
+ * Atlas when it was built, else every PNG is decoded.
+ * The images to paint are converted to the format of the screen and scaled
+ * to the size they are drawn at, so painting a card is a plain copy.
+ */
+public final class CardImages {
+
+	private static final Map<Integer, BufferedImage> faces;
+	private static final BufferedImage back;
+	private static final BufferedImage background;
+	private static final Atlas atlas;
+	
+	// Images ready to paint, by image, size and display scale
+	private static final Map<Long, BufferedImage> prepared = new HashMap<Long, BufferedImage>();
+	private static final int BACK = -1;
+	
+	// Number of card images painted, only read and written by the event thread
+	static long paintCalls;
+	
+	static {
+		atlas = Atlas.load();
+		
+		Map<Integer, BufferedImage> loaded = new HashMap<Integer, BufferedImage>();
+		
+		for(Suit suit : Suit.values()) {
+			for(int value = 1; value <= 14; ++value) {
+				if(value != 11)
+					loaded.put(key(value, suit), read(fileName(value, suit)));
+			}
+		}
+		
+		// The empty pile placeholder
+		loaded.put(key(100, Suit.Spades), read(fileName(100, Suit.Spades)));
+		
+		faces = Collections.unmodifiableMap(loaded);
+		back = read("back");
+		background = atlas != null ? atlas.image("background") : readFile("../images/background.jpg");
+	}
+	
+	private CardImages() {}
+	
+	/**
+	 * Returns the shared face image of a card
+	 * @param {Integer} value The value of the card
+	 * @param {Suit} suit The suit of the card
+	 * @return {BufferedImage} The image, or null if it could not be loaded
+	 */
+	public static BufferedImage face(int value, Suit suit) {
+		return faces.get(key(value, suit));
+	}
+	
+	/**
+	 * Returns the shared image of the back of the cards
+	 * @return {BufferedImage}
+	 */
+	public static BufferedImage back() {
+		return back;
+	}
+	
+	/**
+	 * Returns the image of the table
+	 * @return {BufferedImage}
+	 */
+	public static BufferedImage background() {
+		return background;
+	}
+	
+	/**
+	 * Returns the face of a card ready to be painted at the given size
+	 * @param {Integer} value The value of the card
+	 * @param {Suit} suit The suit of the card
+	 * @param {Integer} width
+	 * @param {Integer} height
+	 * @param {Graphics2D} g The graphics it will be painted on
+	 * @return {BufferedImage} Sized for the device pixels, or null
+	 */
+	public static BufferedImage face(int value, Suit suit, int width, int height, Graphics2D g) {
+		return prepared(key(value, suit), face(value, suit), width, height, g);
+	}
+	
+	/**
+	 * Returns the back of the cards ready to be painted at the given size
+	 * @return {BufferedImage}
+	 */
+	public static BufferedImage back(int width, int height, Graphics2D g) {
+		return prepared(BACK, back, width, height, g);
+	}
+	
+	/**
+	 * Returns the display scale of a graphics, eg: 2 on a retina screen
+	 */
+	public static double scale(Graphics2D g) {
+		return g.getTransform().getScaleX();
+	}
+	
+	/**
+	 * Converts an image once for each size and display scale
+	 */
+	private static synchronized BufferedImage prepared(int image, BufferedImage source, int width, int height, Graphics2D g) {
+		if(source == null) return null;
+		
+		double scale = scale(g);
+		int deviceWidth = (int)Math.ceil(width * scale);
+		int deviceHeight = (int)Math.ceil(height * scale);
+		
+		Long key = ((long)image << 48) | ((long)(scale * 100) << 32) | (deviceWidth << 16) | deviceHeight;
+		BufferedImage result = prepared.get(key);
+		if(result != null) return result;
+		
+		GraphicsConfiguration config = g.getDeviceConfiguration();
+		if(config != null)
+			result = config.createCompatibleImage(deviceWidth, deviceHeight, Transparency.TRANSLUCENT);
+		else
+			result = new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+		
+		Graphics2D scaled = result.createGraphics();
+		scaled.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		scaled.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		scaled.drawImage(source, 0, 0, deviceWidth, deviceHeight, null);
+		scaled.dispose();
+		
+		prepared.put(key, result);
+		return result;
+	}
+	
+	/**
+	 * Paints an image from prepared() at the given place.
+	 * Without display scaling the pixels are copied 1:1.
+	 */
+	public static void draw(Graphics2D g, BufferedImage image, int x, int y, int width, int height) {
+		paintCalls++;
+		
+		if(image.getWidth() == width && image.getHeight() == height)
+			g.drawImage(image, x, y, null);
+		else
+			g.drawImage(image, x, y, width, height, null);
+	}
+	
+	/**
+	 * Paints the top part of an image from prepared(), the part of
+	 * a covered card which can be seen
+	 * @param {Integer} visibleHeight The height of the part to paint
+	 */
+	public static void draw(Graphics2D g, BufferedImage image, int x, int y, int width, int height, int visibleHeight) {
+		paintCalls++;
+		
+		int sourceHeight = image.getHeight() * visibleHeight / height;
+		g.drawImage(image, x, y, x + width, y + visibleHeight, 0, 0, image.getWidth(), sourceHeight, null);
+	}
+	
+	private static Integer key(int value, Suit suit) {
+		return value * Suit.values().length + suit.ordinal();
+	}
+	
+	/**
+	 * The image files are all lower case, eg: "k of diamonds"
+	 */
+	private static String fileName(int value, Suit suit) {
+		return (Card.valueString(value) + " of " + suit.name()).toLowerCase();
+	}
+	
+	private static BufferedImage read(String name) {
+		BufferedImage image = null;
+		if(atlas != null)
+			image = atlas.image("cards/" + name);
+		else
+			image = readFile("../images/cards/" + name + ".png");
+		
+		if(image == null) System.err.println("Missing card image: " + name);
+		return image;
+	}
+	
+	private static BufferedImage readFile(String path) {
+		try {
+			URL url = CardImages.class.getResource(path);
+			if(url != null) return ImageIO.read(url);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+}
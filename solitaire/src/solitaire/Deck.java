@@ -1,17 +1,13 @@
 package solitaire;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
-
-import solitaire.Card.Suit;
-
 /**
- * A deck class to hold all 52 cards
+ * A deck class to hold all 52 cards, stored as Table card ordinals
  */
 public class Deck {
 	
-	ArrayList<Card> cards;
+	byte[] cards;
+	int next;
+	private long state;
 	
 	/**
 	 * Class constructor
@@ -19,27 +15,58 @@ public class Deck {
 	public Deck() {
 		
 		// Create all the 52 cards
-		cards = new ArrayList<Card>();
+		cards = new byte[Table.CARDS];
 		
-		for(Suit suit : Suit.values()) {
-			for(int value = 1; value <= 14; ++value) {
-				if(value != 11)
-					cards.add(new Card(value, suit));
-			}
-		}
+		for(int card = 0; card < Table.CARDS; ++card)
+			cards[card] = (byte)card;
+		
+		next = 0;
 	}
 
 	/**
-	 * Shuffles the deck by doing deck.size perumatations
+	 * Shuffles the deck into the given deal number.
+	 * The same number always gives the same deal: the cards are put in order,
+	 * then shuffled with a single Fisher-Yates pass driven by a SplitMix64
+	 * generator seeded with the deal number.
+	 * @param {Long} deal The deal number
+	 */
+	public void shuffle(long deal) {
+		for(int card = 0; card < cards.length; ++card)
+			cards[card] = (byte)card;
+		
+		next = 0;
+		state = deal;
+		
+		for(int i = cards.length - 1; i > 0; --i) {
+			int j = nextInt(i + 1);
+			byte swap = cards[i];
+			cards[i] = cards[j];
+			cards[j] = swap;
+		}
+	}
+	
+	/**
+	 * Returns the next value of the SplitMix64 generator
+	 */
+	private long nextLong() {
+		long z = (state += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Returns a uniform value in [0, bound), without the modulo bias
 	 */
-	public void shuffle() {
-		Random randIndex = new Random();
-		int size = cards.size();
+	private int nextInt(int bound) {
+		long bits, value;
 		
-		for(int shuffles = 1; shuffles <= 20; ++shuffles)
-			for (int i = 0; i < size; i++) 
-				Collections.swap(cards, i, randIndex.nextInt(size));
+		do {
+			bits = nextLong() >>> 1;
+			value = bits % bound;
+		} while(bits - value + (bound - 1) < 0);
 		
+		return (int)value;
 	}
 	
 	/**
@@ -47,18 +74,15 @@ public class Deck {
 	 * @return {Integer} Number of cards in deck
 	 */
 	public int size() {
-		return cards.size();
+		return cards.length - next;
 	}
 	
 	/**
 	 * Draws a card from the pack. Pack must not be empty.
-	 * @return First card in pack
+	 * @return {Integer} Ordinal of the first card in pack
 	 */
-	public Card drawCard() {
-		Card c = cards.get(0);
-		cards.remove(0);
-
-		return c;
+	public int drawCard() {
+		return cards[next++];
 	}
 	
 }
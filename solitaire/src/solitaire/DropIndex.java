@@ -0,0 +1,135 @@
+package solitaire;
+
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Finds the pile under the mouse without walking the components.
+ * The area of every drop target is computed once, in the coordinates of
+ * a root component, and put in a grid of 32px cells. A cell holds the
+ * (at most four) piles that cover it, so a lookup checks a few rectangles.
+ * The index is rebuilt only after the layout changed.
+ */
+public class DropIndex {
+
+	static final int CELL = 32;
+	static final int SLOTS = 4;
+
+	final Pile[] targets;
+	final Component root;
+	final Rectangle[] areas;
+	int cellColumns, cellRows;
+	int[] cells;
+	boolean dirty = true;
+
+	/**
+	 * Class constructor
+	 * @param {Pile[]} targets The piles cards can be dropped on
+	 * @param {Component} root The component of the coordinates
+	 */
+	public DropIndex(Pile[] targets, Component root) {
+		this.targets = targets;
+		this.root = root;
+
+		areas = new Rectangle[targets.length];
+		for(int i = 0; i < areas.length; ++i)
+			areas[i] = new Rectangle();
+	}
+
+	/**
+	 * Marks the index to be rebuilt before the next lookup,
+	 * after a layout or a resize
+	 */
+	public void invalidate() {
+		dirty = true;
+	}
+
+	/**
+	 * Computes the areas of the piles. The columns reach down to the bottom
+	 * of the root, so the area does not change when cards are added.
+	 * When the columns wrap on several rows, a column only reaches down
+	 * to the piles of the next row.
+	 */
+	public void rebuild() {
+		int width = root.getWidth();
+		int height = root.getHeight();
+
+		cellColumns = width / CELL + 1;
+		cellRows = height / CELL + 1;
+		cells = new int[cellColumns * cellRows * SLOTS];
+		Arrays.fill(cells, -1);
+
+		for(int i = 0; i < targets.length; ++i) {
+			Pile p = targets[i];
+
+			if(SwingUtilities.isDescendingFrom(p, root))
+				areas[i].setBounds(SwingUtilities.convertRectangle(p.getParent(), p.getBounds(), root));
+			else
+				areas[i].setBounds(0, 0, 0, 0);
+		}
+
+		for(int i = 0; i < targets.length; ++i) {
+			Rectangle r = areas[i];
+			if(r.isEmpty()) continue;
+
+			if(targets[i].type == Pile.PileType.Normal) r.height = Math.max(r.height, bottom(i, height) - r.y);
+
+			int x0 = Math.max(0, r.x / CELL), x1 = Math.min(cellColumns - 1, (r.x + r.width) / CELL);
+			int y0 = Math.max(0, r.y / CELL), y1 = Math.min(cellRows - 1, (r.y + r.height) / CELL);
+
+			for(int y = y0; y <= y1; ++y) {
+				for(int x = x0; x <= x1; ++x) {
+					int cell = (y * cellColumns + x) * SLOTS;
+					
+					for(int k = cell; k < cell + SLOTS; ++k) {
+						if(cells[k] == -1) {
+							cells[k] = i;
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		dirty = false;
+	}
+
+	/**
+	 * Returns how far down the area of a column can reach: the top of the
+	 * first pile below it, or the bottom of the root
+	 * @param {Integer} i The index of the column in targets
+	 * @param {Integer} height The height of the root
+	 */
+	int bottom(int i, int height) {
+		Rectangle r = areas[i];
+		int bottom = height;
+
+		for(Rectangle other : areas) {
+			if(other.y > r.y && other.x < r.x + r.width && r.x < other.x + other.width)
+				bottom = Math.min(bottom, other.y);
+		}
+		return bottom;
+	}
+
+	/**
+	 * Returns the pile at a point of the root, or null
+	 * @param {Integer} x
+	 * @param {Integer} y
+	 */
+	public Pile find(int x, int y) {
+		if(dirty) rebuild();
+		if(x < 0 || y < 0) return null;
+
+		int cx = x / CELL, cy = y / CELL;
+		if(cx >= cellColumns || cy >= cellRows) return null;
+
+		int cell = (cy * cellColumns + cx) * SLOTS;
+		for(int k = cell; k < cell + SLOTS && cells[k] != -1; ++k) {
+			if(areas[cells[k]].contains(x, y)) return targets[cells[k]];
+		}
+		return null;
+	}
+}
@@ -1,142 +1,578 @@
 package solitaire;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import solitaire.Card.Suit;
-import solitaire.Pile.PileType;
 
 /**
  * Core class of the application.
- * Contains all objects and states of the game 
+ * Contains all objects and states of the game.
+ * The state is kept in a headless Table, the GUI renders from it.
  */
 public class Engine {
 	
-	ArrayList<Pile> piles;
-	ArrayList<Pile> finalPiles;
-	Pile drawPile, getPile;
-	ArrayList<Pile> allPiles;
+	public final Table table;
 	public final int pileNumber = 7;
 	public Deck deck;
+	public long dealNumber;
+	
+	// False for a game imported from an XML save, they have no deal number
+	public boolean hasDeal = true;
+	public File saveFile = new File("save.dat");
+	
+	// Saves of the previous versions, still loaded if there is no binary save
+	public File legacySaveFile = new File("save.xml");
+	private final Random dealPicker = new Random();
+	
+	// Records every move, null if the game is not journaled
+	public Journal journal;
+	
+	// Notified of every change of the table
+	private final ArrayList<Listener> listeners = new ArrayList<Listener>();
+	
+	// Depth of nested batches, the listeners are told when the last one ends
+	private int batch;
+	
+	// Changed positions of every pile during a batch, from > to when unchanged
+	private final int[] dirtyFrom = new int[Table.PILES];
+	private final int[] dirtyTo = new int[Table.PILES];
+	
+	/**
+	 * Receives the changes of the table, to update only what changed.
+	 * The table is already changed when a method is called.
+	 */
+	public interface Listener {
+		/**
+		 * The cards of a pile changed from the given position
+		 * @param {Integer} pile
+		 * @param {Integer} from First changed position
+		 * @param {Integer} to End of the changed positions, may be past the top
+		 */
+		void pileChanged(int pile, int from, int to);
+		
+		/**
+		 * A column card was turned face-up or face-down
+		 */
+		void cardFlipped(int pile, int i);
+		
+		/**
+		 * The get pile was turned back to the draw pile, or the opposite
+		 */
+		void stockCycled();
+		
+		/**
+		 * The whole table changed: new deal or loaded game
+		 */
+		void tableChanged();
+	}
+	
+	// Moves that can be undone and redone, played from the start position
+	public final History history = new History();
+	public final Table start = new Table();
+	
+	// Looking up the XML factories is slow, they are shared by all the saves
+	private static final XMLInputFactory xmlInput = XMLInputFactory.newInstance();
+	private static final XMLOutputFactory xmlOutput = XMLOutputFactory.newInstance();
 	
 	/**
 	 * Class constructor
 	 */
 	public Engine() {
+		table = new Table();
 		resetCards();
 	}
 	
 	/**
-	 * Reset all game piles and the deck
+	 * Reset all game piles and the deck, with a random deal
 	 */
 	public void resetCards() {
+		resetCards(dealPicker.nextInt(Integer.MAX_VALUE));
+	}
+	
+	/**
+	 * Reset all game piles and the deck
+	 * @param {Long} deal The deal number, the same number always gives the same game
+	 */
+	public void resetCards(long deal) {
+		dealNumber = deal;
+		hasDeal = true;
 		deck = new Deck();
-		deck.shuffle();
-		
-		drawPile = new Pile(120);
-		drawPile.setOffset(0);
+		deck.shuffle(deal);
 		
-		getPile = new Pile(180);
-		getPile.setOffset(0);
-		
-		finalPiles = new ArrayList<Pile>();
-		piles = new ArrayList<Pile>();
-		
-		allPiles = new ArrayList<Pile>();
-		allPiles.add(drawPile);
-		allPiles.add(getPile);
+		table.clear();
+		history.clear();
 	}
 	
 	/**
 	 * Setup the initial game state
 	 */
 	public void setupGame() {
-		// Generate piles
-		drawPile.type = PileType.Draw;
-		getPile.type = PileType.Get;
-
+		// Add i cards to the i-th pile, only the last one is face-up
 		for(int i = 1; i <= pileNumber; ++i) {
-			Pile p = new Pile(120);
+			for(int j = 1; j <= i; ++j)
+				table.push(Table.TABLEAU + i - 1, deck.drawCard(), j != i);
+		}
+		
+		while(deck.size() > 0)
+			table.push(Table.STOCK, deck.drawCard(), true);
+		
+		checkpoint();
+	}
+	
+	/**
+	 * Opens the journal of the game and restores the position it holds, if any.
+	 * The journal is closed when the application exits.
+	 * @param {File} file
+	 * @return {Boolean} True if a game was restored
+	 */
+	public boolean openJournal(File file) {
+		journal = new Journal(file);
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				close(journal);
+			}
+		});
+		
+		try {
+			Long deal = journal.recover(table);
+			if(deal == null) return false;
 			
-			// Add i cards to the current pile
-			for(int j = 1; j <= i; ++j) { 
-				Card card = deck.drawCard();  
-				p.addCard(card);
-				
-				if(j!=i)
-					card.hide();
-				else 
-					card.show();
+			dealNumber = deal;
+			hasDeal = true;
+			checkpoint();
+			return true;
+		} catch(IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Starts the history and the journal again from the current position
+	 */
+	void checkpoint() {
+		history.clear();
+		start.copyFrom(table);
+		
+		for(Listener l : listeners) {
+			l.tableChanged();
+		}
+		
+		if(journal != null) journal.snapshot(table, dealNumber);
+	}
+	
+	/**
+	 * Adds a move that was just played to the history and the journal
+	 * @param {Integer} move
+	 */
+	void record(int move) {
+		history.push(move);
+		applied(move);
+	}
+	
+	/**
+	 * Journals a move that was just applied and tells the listeners
+	 * @param {Integer} move
+	 */
+	void applied(int move) {
+		if(journal != null) journal.append(move, table, dealNumber);
+		
+		fire(move, false);
+	}
+	
+	/**
+	 * Journals a move that was just reverted and tells the listeners
+	 * @param {Integer} move
+	 */
+	void undone(int move) {
+		if(journal != null) journal.appendUndo(move, table, dealNumber);
+		
+		fire(move, true);
+	}
+	
+	/**
+	 * Sends the changes made by a move to the listeners
+	 * @param {Integer} move
+	 * @param {Boolean} undo True if the move was reverted
+	 */
+	void fire(int move, boolean undo) {
+		if(listeners.isEmpty()) return;
+		
+		int src = Move.src(move);
+		
+		if(Move.isFlip(move)) {
+			int i = table.size(src) - 1;
+			if(batch > 0) {
+				dirty(src, i, i + 1);
+				return;
 			}
 			
-			piles.add(p);
-			allPiles.add(p);
+			for(Listener l : listeners) {
+				l.cardFlipped(src, i);
+			}
+			return;
 		}
 		
-		for(Suit suit : Suit.values()) {
-			Pile p = new Pile(100);
-			p.setOffset(0);
-			p.type = PileType.Final;
-			finalPiles.add(p);	
-			allPiles.add(p);
+		if(Move.isTurn(move)) {
+			if(batch > 0) {
+				int cards = table.size(Table.STOCK) + table.size(Table.WASTE);
+				dirty(Table.STOCK, 0, cards);
+				dirty(Table.WASTE, 0, cards);
+				return;
+			}
+			
+			for(Listener l : listeners) {
+				l.stockCycled();
+			}
+			return;
 		}
 		
-		while(deck.size() > 0) {
-			Card card = deck.drawCard();
-			card.hide();
-			drawPile.addCard(card);
+		// The cards left one pile and were added on top of the other
+		int count = Move.count(move);
+		int from = undo ? Move.dst(move) : src;
+		int to = undo ? src : Move.dst(move);
+		
+		int fromSize = table.size(from);
+		int toSize = table.size(to);
+		
+		// The draw pile is numbered from the next card, all its positions change
+		int fromStart = from == Table.STOCK ? 0 : fromSize;
+		int toStart = to == Table.STOCK ? 0 : toSize - count;
+		
+		if(batch > 0) {
+			dirty(from, fromStart, fromSize + count);
+			dirty(to, toStart, toSize);
+			return;
+		}
+		
+		for(Listener l : listeners) {
+			l.pileChanged(from, fromStart, fromSize + count);
+			l.pileChanged(to, toStart, toSize);
 		}
 	}
 	
 	/**
-	 * Draw a card from the draw pile and place it into the get pile
+	 * Adds changed positions of a pile to the current batch
+	 */
+	private void dirty(int pile, int from, int to) {
+		dirtyFrom[pile] = Math.min(dirtyFrom[pile], from);
+		dirtyTo[pile] = Math.max(dirtyTo[pile], to);
+	}
+	
+	/**
+	 * Starts a batch: the changes of the following moves are collected,
+	 * the listeners are told once per pile by endBatch
+	 */
+	void beginBatch() {
+		if(batch++ > 0) return;
+		
+		Arrays.fill(dirtyFrom, Integer.MAX_VALUE);
+		Arrays.fill(dirtyTo, -1);
+	}
+	
+	/**
+	 * Ends a batch, and sends the changed piles when it was the outer one
+	 */
+	void endBatch() {
+		if(--batch > 0) return;
+		
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			if(dirtyFrom[pile] > dirtyTo[pile]) continue;
+			
+			for(Listener l : listeners) {
+				l.pileChanged(pile, dirtyFrom[pile], dirtyTo[pile]);
+			}
+		}
+	}
+	
+	/**
+	 * Starts sending the changes of the game to a listener
+	 * @param {Listener} l
+	 */
+	public void addListener(Listener l) {
+		listeners.add(l);
+	}
+	
+	public void removeListener(Listener l) {
+		listeners.remove(l);
+	}
+	
+	/**
+	 * Tests whether the cards have been dealt
+	 * @return {Boolean}
 	 */
-	public void drawCard() {
-		if(!drawPile.cards.isEmpty()) {
-			Card drew = drawPile.drawCard();
-			drew.isReversed = false;
-			getPile.addCard(drew);			
+	public boolean isDealt() {
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			if(table.size(pile) > 0) return true;
 		}
+		return false;
+	}
+	
+	/**
+	 * Draw a card from the draw pile and place it into the get pile
+	 * @return {Boolean} False if the draw pile is empty
+	 */
+	public boolean drawCard() {
+		if(!table.draw()) return false;
+		
+		record(Move.of(Table.STOCK, Table.WASTE, 1));
+		return true;
 	}
 	
 	/**
 	 * When a normal pile is clicked, if the top card is reversed show it
-	 * @param {Pile} p
+	 * @param {Integer} pile The index of the pile
+	 * @return {Boolean} True if a card was turned
 	 */
-	public void clickPile(Pile p) {
-		if(!p.cards.isEmpty()) {
-			Card c = p.cards.get(p.cards.size() - 1);
-			if(c.isReversed) {
-				c.isReversed = false;
+	public boolean clickPile(int pile) {
+		if(!table.flip(pile)) return false;
+		
+		record(Move.flip(pile));
+		return true;
+	}
+	
+	/**
+	 * Reverse the Get pile and place it again for Draw
+	 * @return {Boolean} False if the draw pile is not empty, or both are
+	 */
+	public boolean turnGetPile() {
+		int count = table.size(Table.WASTE);
+		if(!table.turnStock()) return false;
+		
+		record(Move.of(Table.WASTE, Table.STOCK, count));
+		return true;
+	}
+	
+	/**
+	 * Moves the cards starting at the given position on top of another pile,
+	 * if the move is valid.
+	 * @param {Integer} src The index of the source pile
+	 * @param {Integer} start The position of the first moved card
+	 * @param {Integer} dst The index of the destination pile
+	 * @return {Boolean} True if the cards were moved
+	 */
+	public boolean movePile(int src, int start, int dst) {
+		if(!table.canMove(src, start, dst)) return false;
+		
+		int count = table.size(src) - start;
+		table.move(src, start, dst);
+		record(Move.of(src, dst, count));
+		return true;
+	}
+
+	/**
+	 * Moves the top card of a pile to the first foundation that accepts it
+	 * @param {Integer} pile A column or the get pile
+	 * @return {Boolean} True if the card was moved
+	 */
+	public boolean moveToFoundation(int pile) {
+		int size = table.size(pile);
+		if(size == 0) return false;
+		
+		for(int f = Table.FOUNDATION; f < Table.FOUNDATION + Table.FOUNDATIONS; ++f) {
+			if(movePile(pile, size - 1, f)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Tests whether a card can go to the foundations without ever being
+	 * needed on the columns: the cards it could hold there are already
+	 * on the foundations. Aces and twos are always safe.
+	 * @param {Integer} card
+	 */
+	public boolean isSafe(int card) {
+		int rank = Table.rank(card);
+		if(rank <= 1) return true;
+		
+		for(int suit = 0; suit < 4; ++suit) {
+			// A red card can hold the black cards of the rank below, and the opposite
+			if(Table.isRed(suit * Table.RANKS) != Table.isRed(card) && foundationSize(suit) < rank)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the number of cards of a suit on the foundations
+	 * @param {Integer} suit
+	 */
+	int foundationSize(int suit) {
+		for(int f = Table.FOUNDATION; f < Table.FOUNDATION + Table.FOUNDATIONS; ++f) {
+			int size = table.size(f);
+			if(size > 0 && Table.suit(table.cardAt(f, 0)) == suit) return size;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Moves cards from the columns and the get pile to the foundations
+	 * until none can be moved. The listeners are told once per changed pile.
+	 * @param {Boolean} safeOnly Only move the cards that are safe
+	 * @return {Integer} The number of moved cards
+	 */
+	public int autoPlay(boolean safeOnly) {
+		int moved = 0;
+		boolean found = true;
+		
+		beginBatch();
+		try {
+			while(found) {
+				found = false;
+				
+				for(int i = 0; i <= pileNumber; ++i) {
+					int pile = i < pileNumber ? Table.TABLEAU + i : Table.WASTE;
+					int card = table.top(pile);
+					
+					if(card == -1 || (safeOnly && !isSafe(card))) continue;
+					
+					if(moveToFoundation(pile)) {
+						moved++;
+						found = true;
+					}
+				}
 			}
+		} finally {
+			endBatch();
 		}
+		return moved;
 	}
 	
 	/**
-	 * Reverse the Get pile and place it again for Draw
+	 * Tests whether all the column cards are face-up, then the game
+	 * can always be finished
 	 */
-	public void turnGetPile() {
-		if(!drawPile.cards.isEmpty()) return;
+	public boolean canAutoComplete() {
+		if(table.isWon()) return false;
 		
-		while(!getPile.cards.isEmpty()) {
-			Card c = getPile.drawCard();
-			c.isReversed = true;
-			
-			drawPile.addCard(c);
+		for(int pile = Table.TABLEAU; pile < Table.TABLEAU + pileNumber; ++pile) {
+			if(table.faceDown(pile) > 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Finishes the game: moves every card to the foundations, drawing
+	 * from the draw pile when nothing else can move.
+	 * Each card is a separate move in the history, the listeners are told
+	 * once per changed pile.
+	 * @return {Integer} The number of moves played
+	 */
+	public int autoComplete() {
+		int moves = 0;
+		int idle = 0;
+		
+		beginBatch();
+		try {
+			// Stop after a whole pass over the draw pile without moving a card
+			while(!table.isWon() && idle <= 2 * (Table.CARDS + 1)) {
+				int moved = autoPlay(false);
+				moves += moved;
+				
+				if(moved > 0) {
+					idle = 0;
+					continue;
+				}
+				
+				if(table.size(Table.STOCK) > 0)
+					drawCard();
+				else if(table.size(Table.WASTE) > 0)
+					turnGetPile();
+				else
+					break;
+				
+				moves++;
+				idle++;
+			}
+		} finally {
+			endBatch();
 		}
+		return moves;
+	}
+	
+	/**
+	 * Fills the buffer with all the moves that are legal in the current state.
+	 * Meant for hints and bots, nothing is allocated by the call.
+	 * @param {Integer[]} moves Reusable buffer of at least Move.MAX_MOVES entries
+	 * @return {Integer} The number of moves written in the buffer
+	 */
+	public int legalMoves(int[] moves) {
+		return table.legalMoves(moves);
+	}
+
+	/**
+	 * Applies a move returned by legalMoves.
+	 * Only the table changes: nothing is recorded and the listeners are not told,
+	 * so search code can call it at every node.
+	 * @param {Integer} move
+	 */
+	public void applyMove(int move) {
+		table.apply(move);
+	}
+	
+	/**
+	 * Reverts the last applied move, in constant time.
+	 * Search code can explore the moves without copying the game.
+	 * @param {Integer} move
+	 */
+	public void undoMove(int move) {
+		table.undo(move);
+	}
+	
+	/**
+	 * Plays a move returned by legalMoves for the player: it is added to
+	 * the history and the journal, and the listeners are told
+	 * @param {Integer} move
+	 */
+	public void play(int move) {
+		table.apply(move);
+		record(move);
+	}
+	
+	/**
+	 * Reverts the last move of the player
+	 * @return {Boolean} False if there is nothing to undo
+	 */
+	public boolean undo() {
+		if(!history.canUndo()) return false;
+		
+		int move = history.undo();
+		table.undo(move);
+		undone(move);
+		return true;
+	}
+	
+	/**
+	 * Plays again the last undone move
+	 * @return {Boolean} False if there is nothing to redo
+	 */
+	public boolean redo() {
+		if(!history.canRedo()) return false;
+		
+		int move = history.redo();
+		table.apply(move);
+		applied(move);
+		return true;
 	}
 
 	/**
@@ -144,167 +580,227 @@ public class Engine {
 	 * @return {Boolean}
 	 */
 	public boolean checkWin() {
-		for(Pile p : finalPiles) {
-			if(p.cards.size() != 13)
-				return false;
-		}
-		return true;
+		return table.isWon();
 	}
 
 	/**
-	 * Save the game state to save.xml file
+	 * Save the game state to the save file, as a binary Snapshot
 	 */
 	public void save() {
+		byte[] bytes = new byte[Snapshot.MAX_SIZE];
+		int length = Snapshot.write(table, dealNumber, bytes, 0);
 		
-		String saveString = "";
-		
+		FileOutputStream out = null;
 		try {
-			DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			out = new FileOutputStream(saveFile);
+			out.write(bytes, 0, length);
+		} catch(IOException e) {
+			e.printStackTrace();
+		} finally {
+			close(out);
+		}
+	}
+	
+	/**
+	 * Load the game state from the save file.
+	 * XML saves of the previous versions are imported.
+	 * @return {Boolean} False if the save could not be read, the game is not changed
+	 */
+	public boolean load() {
+		try {
+			if(!saveFile.exists() && legacySaveFile.exists()) {
+				if(!loadXml(legacySaveFile)) return false;
+				
+				hasDeal = false;
+				checkpoint();
+				return true;
+			}
 			
-			Document doc = docBuilder.newDocument();
+			byte[] bytes = Files.readAllBytes(saveFile.toPath());
 			
-			String newLine = System.getProperty( "line.separator" );
-
-			Element game =  doc.createElement("game");
-			doc.appendChild(game);
+			if(Snapshot.isSnapshot(bytes, 0, bytes.length)) {
+				dealNumber = Snapshot.read(bytes, 0, bytes.length, table);
+				hasDeal = true;
+			} else if(loadXml(saveFile)) {
+				hasDeal = false;
+			} else {
+				return false;
+			}
 			
-			// This is from previous implementation, save each pile in a new line
-			for(Pile p : piles)
-				saveString += p.toString() + newLine;
-			for(Pile p: finalPiles)
-				saveString += p.toString() + newLine;
-			saveString += drawPile.toString() + newLine;
-			saveString += getPile.toString() + newLine;
+			checkpoint();
+			return true;
+		} catch(IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Records the moves played since the start of the game
+	 * @param {File} file
+	 */
+	public void saveReplay(File file) {
+		try {
+			Replay.write(file, start, dealNumber, history.moves, history.position());
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	static void close(Closeable c) {
+		try {
+			if(c != null) c.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-			String[] lines = saveString.split(newLine);
+	/**
+	 * Save the game state as XML
+	 * @param {File} file
+	 */
+	public void saveXml(File file) {
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(file));
+			saveXml(out);
+		} catch(Exception e) {
+			e.printStackTrace();
+		} finally {
+			close(out);
+		}
+	}
+	
+	/**
+	 * Writes the game state as XML, straight to the stream
+	 * @param {OutputStream} out
+	 */
+	public void saveXml(OutputStream out) throws XMLStreamException {
+		XMLStreamWriter writer = xmlOutput.createXMLStreamWriter(out, "UTF-8");
+		String newLine = System.getProperty("line.separator");
+		
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeCharacters(newLine);
+		writer.writeStartElement("game");
+		
+		// Piles are saved in the Table order, each starting with the base card
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			writer.writeCharacters(newLine + "  ");
+			writer.writeStartElement("pile");
+			writeCard(writer, newLine, "100", Suit.Spades.name(), false);
 			
-			for(String pile : lines) {
-				Element p = doc.createElement("pile");
-				
-				String cardStrings[] = pile.split("-");
-				for(String c: cardStrings) {
-					String parts[] = c.split(" of ");
-					
-					Element cardE = doc.createElement("card");
-					cardE.setAttribute("value", parts[0]);
-					cardE.setAttribute("suit", parts[1]);
-					cardE.setAttribute("isReversed", parts[2]);
-					
-					p.appendChild(cardE);
-				}
+			for(int i = 0; i < table.size(pile); ++i) {
+				int card = table.cardAt(pile, i);
 				
-				game.appendChild(p);
+				writeCard(writer, newLine, Card.valueString(Table.value(card)),
+						Suit.values()[Table.suit(card)].name(), table.isFaceDown(pile, i));
 			}
-				
-			Transformer transformer = TransformerFactory.newInstance().newTransformer();
-			DOMSource src = new DOMSource(doc);
-			StreamResult res = new StreamResult(new File("save.xml"));
 			
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-			transformer.transform(src, res);
-		} catch (Exception e) {
-			e.printStackTrace();
+			writer.writeCharacters(newLine + "  ");
+			writer.writeEndElement();
 		}
-       
+		
+		writer.writeCharacters(newLine);
+		writer.writeEndElement();
+		writer.writeCharacters(newLine);
+		writer.writeEndDocument();
+		writer.close();
+	}
+	
+	private void writeCard(XMLStreamWriter writer, String newLine, String value, String suit,
+			boolean isReversed) throws XMLStreamException {
+		writer.writeCharacters(newLine + "    ");
+		writer.writeEmptyElement("card");
+		writer.writeAttribute("isReversed", isReversed ? "true" : "false");
+		writer.writeAttribute("suit", suit);
+		writer.writeAttribute("value", value);
 	}
 
 	/**
-	 * Load the game state from save.xml file
+	 * Load the game state from an XML save
+	 * @param {File} file
+	 * @return {Boolean} False if the save could not be read, the game is not changed
 	 */
-	public void load() {
+	public boolean loadXml(File file) {
+		InputStream in = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document dom = db.parse("save.xml");
-			Element docEle = dom.getDocumentElement();
-			NodeList nl = docEle.getChildNodes();
-			int currentPileCount = 0;
-			if (nl != null) {
-				// Iterate through all piles
-				for (int i = 0; i < nl.getLength(); i++) {
-					if (nl.item(i).getNodeType() != Node.ELEMENT_NODE)
-						continue;
-					Element el = (Element) nl.item(i);
-					if (el.getNodeName().contains("pile")) {
-
-						NodeList cardList = el.getChildNodes();
-						Pile tempPile = new Pile(100);
-
-						if (cardList != null) {
-							// Iterate through all cards
-							for (int j = 0; j < cardList.getLength(); j++) {
-								if (cardList.item(j).getNodeType() != Node.ELEMENT_NODE)
-									continue;
-								
-								Element cardNode = (Element) cardList.item(j);
-
-								String suitName = cardNode.getAttribute("suit");
-								boolean isReversed = cardNode.getAttribute("isReversed").equals("true");
-								int value = Card.valueInt(cardNode.getAttribute("value"));
-
-								// Skip the base card
-								if (value == 100)
-									continue;
-
-								// Search for the card in all piles
-								Card card = null;
-								Pile foundPile = null;
-
-								for (Pile p : allPiles) {
-									if ((card = p.searchCard(value, suitName)) != null) {
-										foundPile = p;
-										break;
-									}
-								}
-
-								tempPile.addCard(card);
-								foundPile.removeCard(card);
-
-								// Face-up or face-down card
-								if (isReversed) {
-									card.hide();
-								} else {
-									card.show();
-								}
-							}
-
-							// Add the cards to the correct pile
-							if (currentPileCount < pileNumber) {
-								piles.get(currentPileCount).merge(tempPile);
-							} else if (currentPileCount < pileNumber + 4) {
-								finalPiles.get(currentPileCount - pileNumber)
-										.merge(tempPile);
-
-								if (!tempPile.isEmpty()) {
-									// Set the pile filter for final piles
-									Card c = tempPile.peekTopCard();
-									finalPiles.get(currentPileCount
-											- pileNumber).suitFilter = c.suit;
-								}
-							} else if (currentPileCount == pileNumber + 4) {
-								drawPile.merge(tempPile);
-							} else {
-								getPile.merge(tempPile);
-							}
-						}
-						currentPileCount++;
-					}
+			in = new BufferedInputStream(new FileInputStream(file));
+			loadXml(in);
+			return true;
+		} catch(Exception e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			close(in);
+		}
+	}
+	
+	/**
+	 * Reads an XML save with a streaming parser.
+	 * The piles are checked like a Snapshot before the table is changed.
+	 * @param {InputStream} in
+	 * @throws IOException If a pile or a card is not valid
+	 */
+	public void loadXml(InputStream in) throws XMLStreamException, IOException {
+		XMLStreamReader reader = xmlInput.createXMLStreamReader(in);
+		int currentPileCount = -1;
+		
+		int[][] piles = new int[Table.PILES][Table.CARDS];
+		int[] sizes = new int[Table.PILES];
+		
+		try {
+			while(reader.hasNext()) {
+				if(reader.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+				
+				String name = reader.getLocalName();
+				
+				if(name.equals("pile")) {
+					currentPileCount++;
+					continue;
 				}
-			}
-						
-			// Draw and add the cards again so the offsets are re-calculated
-			for(Pile p: allPiles) {
-				ArrayList<Card> cards = new ArrayList<Card>();
 				
-				while(!p.isEmpty()) cards.add(p.drawCard());
+				if(!name.equals("card") || currentPileCount < 0 || currentPileCount >= Table.PILES)
+					continue;
+				
+				String value = reader.getAttributeValue(null, "value");
+				
+				// Skip the base card
+				if("100".equals(value))
+					continue;
+				
+				int card = xmlCard(value, reader.getAttributeValue(null, "suit"));
+				boolean isReversed = "true".equals(reader.getAttributeValue(null, "isReversed"));
 				
-				for(Card card: cards)
-					p.addCard(card);
+				if(sizes[currentPileCount] == Table.CARDS)
+					throw new IOException("Corrupted save, too many cards in pile " + currentPileCount);
+				piles[currentPileCount][sizes[currentPileCount]++] = card | (isReversed ? Snapshot.FACE_DOWN : 0);
 			}
-			
-		} catch(Exception e ) {
-			e.printStackTrace();
+		} finally {
+			reader.close();
 		}
-	}	
+		
+		Snapshot.check(piles, sizes);
+		Snapshot.put(piles, sizes, table);
+	}
+	
+	/**
+	 * Returns the card of the value and suit attributes of an XML save
+	 * @throws IOException If they do not name a card
+	 */
+	private static int xmlCard(String value, String suit) throws IOException {
+		int v;
+		try {
+			v = Card.valueInt(value);
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupted save, bad card value " + value);
+		}
+		if(v < 1 || v > 14 || v == 11)
+			throw new IOException("Corrupted save, bad card value " + value);
+		
+		for(Suit s : Suit.values()) {
+			if(s.name().equals(suit)) return Table.card(v, s.ordinal());
+		}
+		throw new IOException("Corrupted save, bad suit " + suit);
+	}
 }
@@ -0,0 +1,101 @@
+package solitaire;
+
+import java.lang.management.ManagementFactory;
+
+import javax.swing.RepaintManager;
+
+/**
+ * Measures the Swing paint passes: how many frames were painted,
+ * how long they took and how many per second.
+ * Installed as the RepaintManager, so every repaint of the window is counted.
+ */
+public class FrameCounter extends RepaintManager {
+
+	long frames;
+	long paintNanos;
+	long maxNanos;
+	long start;
+	long paintCalls;
+
+	// Milliseconds from the start of the JVM to the end of the first frame,
+	// only measured with -Dsolitaire.frames: the management beans are slow to load
+	final boolean timeFirstFrame = Boolean.getBoolean("solitaire.frames");
+	long firstFrame = -1;
+
+	/**
+	 * Installs a counter for the whole application
+	 * @return {FrameCounter}
+	 */
+	public static FrameCounter install() {
+		FrameCounter counter = new FrameCounter();
+		RepaintManager.setCurrentManager(counter);
+		return counter;
+	}
+
+	public FrameCounter() {
+		reset();
+	}
+
+	@Override
+	public void paintDirtyRegions() {
+		long begin = System.nanoTime();
+		super.paintDirtyRegions();
+		long time = System.nanoTime() - begin;
+
+		frames++;
+		paintNanos += time;
+		maxNanos = Math.max(maxNanos, time);
+
+		if(timeFirstFrame && firstFrame == -1) {
+			firstFrame = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+			System.out.println("First frame: " + firstFrame + " ms after start");
+		}
+	}
+
+	/**
+	 * Starts counting again, eg: when a drag starts
+	 */
+	public void reset() {
+		frames = 0;
+		paintNanos = 0;
+		maxNanos = 0;
+		start = System.nanoTime();
+		paintCalls = CardImages.paintCalls;
+	}
+
+	public long frames() {
+		return frames;
+	}
+
+	/**
+	 * Returns the average paint time of a frame, in milliseconds
+	 */
+	public double averageMillis() {
+		return frames == 0 ? 0 : paintNanos / 1e6 / frames;
+	}
+
+	public double maxMillis() {
+		return maxNanos / 1e6;
+	}
+
+	/**
+	 * Returns the frames painted per second since the last reset
+	 */
+	public double framesPerSecond() {
+		long elapsed = System.nanoTime() - start;
+		return elapsed == 0 ? 0 : frames * 1e9 / elapsed;
+	}
+
+	/**
+	 * Returns the card images painted since the last reset
+	 */
+	public long paintCalls() {
+		return CardImages.paintCalls - paintCalls;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d frames, %.2f ms average, %.2f ms max, %.0f FPS, %d cards painted",
+				frames, averageMillis(), maxMillis(), framesPerSecond(), paintCalls());
+	}
+}
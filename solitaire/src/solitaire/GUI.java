@@ -1,18 +1,28 @@
 package solitaire;
 
+import java.awt.AlphaComposite;
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.Transparency;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -20,7 +30,11 @@ import java.util.HashMap;
 import java.util.Map;
 
 import javax.imageio.ImageIO;
+import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLayeredPane;
 import javax.swing.JMenu;
@@ -28,12 +42,16 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
+import javax.swing.border.Border;
 
+import solitaire.Card.Suit;
 import solitaire.Pile.PileType;
 
 public class GUI extends JFrame implements ActionListener, MouseListener,
-										   MouseMotionListener {
+										   MouseMotionListener, Engine.Listener {
 
 		private JMenuBar menuBar;
 		
@@ -45,10 +63,44 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 		JLayeredPane lp;
 		Engine game;
 		
+		// Components which display the game model
+		Card[] cardViews;
+		Pile[] pileViews;
+		ArrayList<Pile> piles;
+		ArrayList<Pile> finalPiles;
+		Pile drawPile, getPile;
+		
 		// Auxiliary elements to use while dragging
 		Pile tempPile;
+		Pile dragPile;
+		DragSprite dragSprite;
 		Point mouseOffset;
 		
+		// Piles under the mouse, and the card showing where the cards would go
+		DropIndex dropIndex;
+		Point mouse = new Point();
+		Card dropHighlight;
+		Border dropBorder = BorderFactory.createLineBorder(Color.GREEN, 3);
+		
+		// Paint times, printed after each drag with -Dsolitaire.frames=true
+		FrameCounter frames;
+		boolean showFrames = Boolean.getBoolean("solitaire.frames");
+		
+		// Shown while a recorded game is replayed, null otherwise
+		ReplayBar replayBar;
+		
+		// Background search for the Hint action, and the cards it highlights
+		Hints hints = new Hints();
+		ArrayList<Card> hinted = new ArrayList<Card>();
+		Border hintBorder = BorderFactory.createLineBorder(Color.YELLOW, 3);
+		
+		// Option to move the safe cards to the foundations after every move
+		JCheckBoxMenuItem safeMoves;
+		
+		// Draws the whole table when started with -Dsolitaire.renderer=canvas,
+		// null when every card is a component
+		TableCanvas canvas;
+		
 		/**
 		 * GUI class constructor
 		 */
@@ -56,6 +108,7 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			this.game = game;
 			
 			// Initialize stuff
+			frames = FrameCounter.install();
 			createTextMap();
 			
 			
@@ -63,11 +116,8 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			setTitle("Solitaire");
 			setSize(900, 700);
 			
-			try {
-				setContentPane((new JPanelWithBackground("../images/background.jpg")));
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			// Loaded with the cards, from the atlas when it was built
+			setContentPane(new JPanelWithBackground(CardImages.background()));
 			
 			setLayout(new BorderLayout());
 			
@@ -107,8 +157,24 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			gameArea.add(columns);
 			
 			//layers.add(dragLayer, JLayeredPane.DRAG_LAYER);
+			if("canvas".equals(System.getProperty("solitaire.renderer"))) {
+				canvas = new TableCanvas(this, game);
+				add(canvas);
+				
+				lp = getLayeredPane();
+				setVisible(true);
+				
+				if(game.isDealt())
+					showGame();
+				else
+					initialize();
+				return;
+			}
+			
 			add(gameArea);
 			
+			createGameViews();
+			
 			// Display the window
 			lp = getLayeredPane();
 			setVisible(true);
@@ -116,35 +182,239 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			// Auxiliarry elements
 			mouseOffset = new Point(0, 0);
 			
-			initialize();
+			// The drag pile is created once and reused for every drag,
+			// it is not displayed: an image of its cards is dragged instead
+			dragPile = new Pile(100);
+			dragSprite = new DragSprite();
+			dragSprite.setVisible(false);
+			
+			// The sprite is under the mouse, it receives the drag events
+			// if the dragged card does not
+			dragSprite.addMouseListener(this);
+			dragSprite.addMouseMotionListener(this);
+			lp.add(dragSprite, JLayeredPane.DRAG_LAYER);
+			
+			createDropIndex();
+			
+			// The piles are updated from the changes of the game
+			game.addListener(this);
+			
+			// Resume the game restored from the journal
+			if(game.isDealt())
+				showGame();
+			else
+				initialize();
 		}
 		
 		/**
-		 * Add cards from the game to the GUI
+		 * Create the components for all the cards and piles.
+		 * They are created once and reused by every game.
 		 */
-		private void initialize() {
-			topColumns.removeAll();
-			columns.removeAll();
+		private void createGameViews() {
+			cardViews = new Card[Table.CARDS];
 			
 			// Add a listener for each card
-			for(Card c: game.deck.cards) {
+			for(int card = 0; card < Table.CARDS; ++card) {
+				Card c = new Card(Table.value(card), Suit.values()[Table.suit(card)]);
 				c.addMouseListener(this);
-				c.addMouseMotionListener(this);		
+				c.addMouseMotionListener(this);
+				cardViews[card] = c;
+			}
+			
+			pileViews = new Pile[Table.PILES];
+			piles = new ArrayList<Pile>();
+			finalPiles = new ArrayList<Pile>();
+			
+			for(int i = 0; i < game.pileNumber; ++i) {
+				Pile p = createPileView(Table.TABLEAU + i, 120, PileType.Normal);
+				piles.add(p);
+			}
+			
+			for(int i = 0; i < Table.FOUNDATIONS; ++i) {
+				Pile p = createPileView(Table.FOUNDATION + i, 100, PileType.Final);
+				p.setOffset(0);
+				finalPiles.add(p);
 			}
 			
+			drawPile = createPileView(Table.STOCK, 120, PileType.Draw);
+			drawPile.setOffset(0);
+			
+			// Clicks on the empty draw pile turn the get pile back
+			drawPile.base.addMouseListener(this);
+			
+			getPile = createPileView(Table.WASTE, 180, PileType.Get);
+			getPile.setOffset(0);
+		}
+		
+		private Pile createPileView(int index, int width, PileType type) {
+			Pile p = new Pile(width);
+			p.table = game.table;
+			p.index = index;
+			p.type = type;
+			
+			pileViews[index] = p;
+			return p;
+		}
+		
+		/**
+		 * Creates the index of the piles cards can be dropped on.
+		 * It is rebuilt when the piles move or the window is resized.
+		 */
+		private void createDropIndex() {
+			Pile[] targets = new Pile[piles.size() + finalPiles.size()];
+			for(int i = 0; i < targets.length; ++i)
+				targets[i] = i < piles.size() ? piles.get(i) : finalPiles.get(i - piles.size());
+			
+			dropIndex = new DropIndex(targets, lp);
+			
+			ComponentAdapter moved = new ComponentAdapter() {
+				public void componentMoved(ComponentEvent e) {
+					dropIndex.invalidate();
+				}
+			};
+			ComponentAdapter resized = new ComponentAdapter() {
+				public void componentResized(ComponentEvent e) {
+					dropIndex.invalidate();
+				}
+			};
+			
+			lp.addComponentListener(resized);
+			gameArea.addComponentListener(moved);
+			topColumns.addComponentListener(moved);
+			columns.addComponentListener(moved);
+			for(Pile p : targets)
+				p.addComponentListener(moved);
+		}
+		
+		/**
+		 * Returns the position of the mouse in the layered pane.
+		 * The same point is reused for every event.
+		 */
+		private Point mouseInLayers(MouseEvent e) {
+			mouse.setLocation(e.getXOnScreen(), e.getYOnScreen());
+			SwingUtilities.convertPointFromScreen(mouse, lp);
+			return mouse;
+		}
+		
+		/**
+		 * Highlights the card the dragged cards would be dropped on
+		 * @param {Pile} p The pile under the mouse, or null
+		 */
+		private void highlightDrop(Pile p) {
+			Card target = null;
+			if(p != null && p.acceptsPile(tempPile))
+				target = p.isEmpty() ? p.base : p.peekTopCard();
+			
+			if(target == dropHighlight) return;
+			
+			if(dropHighlight != null) dropHighlight.setBorder(null);
+			if(target != null) target.setBorder(dropBorder);
+			dropHighlight = target;
+		}
+		
+		/**
+		 * Add cards from the game to the GUI
+		 */
+		private void initialize() {
 			game.setupGame();
-			for(Pile p : game.piles) {
+			showGame();
+		}
+		
+		/**
+		 * Shows the deal number in the title, when the game has one
+		 */
+		private void showTitle() {
+			setTitle(game.hasDeal ? "Solitaire - Deal #" + game.dealNumber : "Solitaire");
+		}
+		
+		/**
+		 * Add the piles of the current game to the GUI
+		 */
+		private void showGame() {
+			showTitle();
+			
+			if(canvas != null) {
+				canvas.tableChanged();
+				return;
+			}
+			
+			topColumns.removeAll();
+			columns.removeAll();
+			
+			for(Pile p : piles) {
 				columns.add(p);
 			}
 			
-			topColumns.add(game.drawPile);
-			topColumns.add(game.getPile);
+			topColumns.add(drawPile);
+			topColumns.add(getPile);
 			
-			for(Pile p : game.finalPiles) {
+			for(Pile p : finalPiles) {
 				topColumns.add(p);
 			}
 			
+			refresh();
 			validate();
+			dropIndex.invalidate();
+		}
+		
+		/**
+		 * Updates all the piles from the game model
+		 */
+		public void refresh() {
+			if(canvas != null) {
+				canvas.tableChanged();
+				return;
+			}
+			
+			clearHint();
+			
+			for(Pile p : pileViews) {
+				p.sync(cardViews);
+			}
+		}
+		
+		/**
+		 * Updates one pile from the given position up,
+		 * and repaints only the area of the pile
+		 * @param {Integer} pile
+		 * @param {Integer} from
+		 */
+		void updatePile(int pile, int from) {
+			clearHint();
+			
+			Pile p = pileViews[pile];
+			Rectangle area = p.getBounds();
+			p.sync(cardViews, from);
+			
+			// The pile may have grown or shrunk
+			area = area.union(p.getBounds());
+			if(p.getParent() != null)
+				p.getParent().repaint(area.x, area.y, area.width, area.height);
+		}
+		
+		public void pileChanged(int pile, int from, int to) {
+			updatePile(pile, from);
+		}
+		
+		public void cardFlipped(int pile, int i) {
+			clearHint();
+			
+			Pile p = pileViews[pile];
+			if(i >= p.cards.size()) return;
+			
+			Card c = p.cards.get(i);
+			c.isReversed = game.table.isFaceDown(pile, i);
+			c.repaint();
+		}
+		
+		public void stockCycled() {
+			updatePile(Table.STOCK, 0);
+			updatePile(Table.WASTE, 0);
+		}
+		
+		public void tableChanged() {
+			refresh();
+			repaint();
 		}
 		
 		/**
@@ -156,6 +426,16 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			repaint();
 		}
 		
+		/**
+		 * Starts the game with the given deal number
+		 * @param {Long} deal
+		 */
+		public void reset(long deal) {
+			game.resetCards(deal);
+			initialize();
+			repaint();
+		}
+		
 		/**
 		 * Creates the displayText map
 		 * Change this if you want to translate the game into another language
@@ -165,9 +445,19 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			
 			displayText.put("File", "File");
 			displayText.put("New", "New");
+			displayText.put("Deal", "Play deal #N");
+			displayText.put("DealPrompt", "Deal number:");
 			displayText.put("Save", "Save");
 			displayText.put("Load", "Load");
-			displayText.put("Exit", "Exit");			
+			displayText.put("SaveReplay", "Save replay");
+			displayText.put("OpenReplay", "Open replay");
+			displayText.put("Exit", "Exit");
+			displayText.put("Edit", "Edit");
+			displayText.put("Undo", "Undo");
+			displayText.put("Redo", "Redo");
+			displayText.put("Hint", "Hint");
+			displayText.put("NoHint", "No move found");
+			displayText.put("SafeMoves", "Auto-move safe cards");			
 		}
 		
 		/**
@@ -182,8 +472,11 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 			
 			menuOption[] fileOptions = new menuOption[] {
 				new menuOption(displayText.get("New"), KeyEvent.VK_N),
+				new menuOption(displayText.get("Deal"), KeyEvent.VK_D),
 				new menuOption(displayText.get("Save"), KeyEvent.VK_S),
 				new menuOption(displayText.get("Load"), KeyEvent.VK_L),
+				new menuOption(displayText.get("SaveReplay"), KeyEvent.VK_R),
+				new menuOption(displayText.get("OpenReplay"), KeyEvent.VK_O),
 				new menuOption(displayText.get("Exit"), KeyEvent.VK_X)
 			};
 			
@@ -195,7 +488,34 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 				opt.addActionListener(this);
 				FileMenu.add(opt);				
 			}
-
+			
+			JMenu EditMenu = new JMenu(displayText.get("Edit"));
+			EditMenu.setMnemonic(KeyEvent.VK_E);
+			menuBar.add(EditMenu);
+			
+			// Ctrl+Z and Ctrl+Y
+			JMenuItem undo = new JMenuItem(displayText.get("Undo"));
+			undo.setMnemonic(KeyEvent.VK_U);
+			undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+			undo.addActionListener(this);
+			EditMenu.add(undo);
+			
+			JMenuItem redo = new JMenuItem(displayText.get("Redo"));
+			redo.setMnemonic(KeyEvent.VK_R);
+			redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+			redo.addActionListener(this);
+			EditMenu.add(redo);
+			
+			JMenuItem hint = new JMenuItem(displayText.get("Hint"));
+			hint.setMnemonic(KeyEvent.VK_H);
+			hint.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, 0));
+			hint.addActionListener(this);
+			EditMenu.add(hint);
+			
+			safeMoves = new JCheckBoxMenuItem(displayText.get("SafeMoves"));
+			safeMoves.setMnemonic(KeyEvent.VK_A);
+			safeMoves.addActionListener(this);
+			EditMenu.add(safeMoves);
 			
 			setJMenuBar(menuBar);
 		}
@@ -236,33 +556,187 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 				this.dispose();
 				return;
 			}
+			if(item.getText().equals(displayText.get("Undo"))) {
+				// Not while cards are being dragged or a game is replayed
+				if(!isDragging() && replayBar == null) game.undo();
+				return;
+			}
+			if(item.getText().equals(displayText.get("Redo"))) {
+				if(!isDragging() && replayBar == null) game.redo();
+				return;
+			}
+			
+			if(item == safeMoves) {
+				if(safeMoves.isSelected() && !isDragging() && replayBar == null)
+					afterMove();
+				return;
+			}
+			if(item.getText().equals(displayText.get("Hint"))) {
+				if(!isDragging() && replayBar == null) requestHint();
+				return;
+			}
+			
+			// The other actions apply to the game, not to the replay
+			closeReplay();
+			
 			if(item.getText().equals(displayText.get("New"))) {
 				reset();
 				return;
 			}
+			if(item.getText().equals(displayText.get("Deal"))) {
+				String deal = JOptionPane.showInputDialog(this, displayText.get("DealPrompt"), game.dealNumber);
+				
+				try {
+					if(deal != null) reset(Long.parseLong(deal.trim()));
+				} catch(NumberFormatException ex) {
+					JOptionPane.showMessageDialog(this, displayText.get("DealPrompt") + " " + deal);
+				}
+				return;
+			}
 			if(item.getText().equals(displayText.get("Save"))) {
 				game.save();
 				JOptionPane.showMessageDialog(this, "Game saved!");
 				return;
 			}
+			if(item.getText().equals(displayText.get("SaveReplay"))) {
+				JFileChooser chooser = new JFileChooser(".");
+				chooser.setSelectedFile(new File("deal-" + game.dealNumber + ".replay"));
+				
+				if(chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+					game.saveReplay(chooser.getSelectedFile());
+				return;
+			}
+			if(item.getText().equals(displayText.get("OpenReplay"))) {
+				JFileChooser chooser = new JFileChooser(".");
+				
+				if(chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+					openReplay(chooser.getSelectedFile());
+				return;
+			}
 			if(item.getText().equals(displayText.get("Load"))) {
-				game.load();
+				if(game.load())
+					showTitle();
+				else
+					JOptionPane.showMessageDialog(this, "The saved game could not be loaded");
 				validate();
 				return;
 			}
 		}
 
+		/**
+		 * Returns true while cards are being dragged
+		 */
+		boolean isDragging() {
+			return tempPile != null || (canvas != null && canvas.dragPile != -1);
+		}
+		
+		/**
+		 * Starts looking for a hint in the background, it is shown when found
+		 */
+		private void requestHint() {
+			final long position = game.table.hash();
+			
+			hints.request(game.table, new Hints.Listener() {
+				public void hintFound(int move) {
+					// Drop hints for a position that is already gone
+					if(game.table.hash() == position && !isDragging() && replayBar == null)
+						showHint(move);
+				}
+			});
+		}
+		
+		/**
+		 * Highlights the cards of a move: the moved cards and the card they go on
+		 * @param {Integer} move
+		 */
+		void showHint(int move) {
+			if(move == -1) {
+				JOptionPane.showMessageDialog(this, displayText.get("NoHint"));
+				return;
+			}
+			if(canvas != null) {
+				canvas.showHint(move);
+				return;
+			}
+			
+			Pile src = pileViews[Move.src(move)];
+			Pile dst = pileViews[Move.dst(move)];
+			
+			if(Move.isFlip(move) || Move.isDraw(move) || Move.isTurn(move)) {
+				// Click on the top card
+				hint(src.peekTopCard());
+			} else {
+				hint(src.cards.get(src.cards.size() - Move.count(move)));
+				hint(dst.isEmpty() ? dst.base : dst.peekTopCard());
+			}
+			repaint();
+		}
+		
+		private void hint(Card c) {
+			c.setBorder(hintBorder);
+			hinted.add(c);
+		}
+		
+		/**
+		 * Removes the highlight of the last hint, it was for the previous position
+		 */
+		private void clearHint() {
+			for(Card c : hinted) {
+				c.setBorder(null);
+			}
+			hinted.clear();
+		}
+		
+		/**
+		 * Shows the replay player for a recorded game
+		 * @param {File} file
+		 */
+		public void openReplay(File file) {
+			Replay replay = null;
+			ReplayBar bar = null;
+			try {
+				replay = new Replay(file);
+				bar = new ReplayBar(this, replay);
+			} catch(IOException e) {
+				JOptionPane.showMessageDialog(this, e.getMessage());
+				return;
+			} finally {
+				// The bar closes the replay, unless it could not be made
+				if(bar == null) Engine.close(replay);
+			}
+			
+			replayBar = bar;
+			add(replayBar, BorderLayout.SOUTH);
+			validate();
+		}
+		
+		/**
+		 * Closes the replay player and shows the game again
+		 */
+		public void closeReplay() {
+			if(replayBar == null) return;
+			
+			replayBar.close();
+			remove(replayBar);
+			replayBar = null;
+			
+			refresh();
+			validate();
+			repaint();
+		}
+
 		@Override
 		public void mouseDragged(MouseEvent e) {
 			if(tempPile != null) {
+				Rectangle area = dragSprite.getBounds();
+				Point pos = mouseInLayers(e);
 				
-				Point pos = getLocationOnScreen();
-				pos.x = e.getLocationOnScreen().x - pos.x - mouseOffset.x;
-				pos.y = e.getLocationOnScreen().y - pos.y - mouseOffset.y;
+				dragSprite.setLocation(pos.x - mouseOffset.x, pos.y - mouseOffset.y);
+				highlightDrop(dropIndex.find(pos.x, pos.y));
 				
-				tempPile.setLocation(pos);
+				// Only where the cards were and where they are now
+				lp.repaint(area.union(dragSprite.getBounds()));
 			}
-			repaint();
 		}
 
 		@Override
@@ -276,18 +750,7 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 				Card c = (Card)e.getComponent();
 				Pile p = (Pile)c.getParent();
 				
-				switch(p.type) {
-					case Draw:
-						game.drawCard();
-					break;
-					case Normal:
-						game.clickPile(p);
-					break;
-					case Get:
-						game.turnGetPile();
-					break;
-				}	
-				repaint();
+				click(p.index, p.cards.indexOf(c), e.getClickCount());
 			}
 		}
 
@@ -295,28 +758,23 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 		public void mousePressed(MouseEvent e) {
 			if(e.getComponent() instanceof Card) {
 				Card c = (Card)e.getComponent();
-				
-				// Do nothing if card is reversed
-				if(c.isReversed)
-					return;
-				
 				Pile p  = (Pile)c.getParent();
 				
-				if(p.cards.isEmpty() || p.type == PileType.Final) return;
+				if(!pick(p.index, p.cards.indexOf(c))) return;
 				
-				tempPile = p.split(c);
+				Rectangle area = p.getBounds();
+				tempPile = p.split(c, dragPile);
+				dragSprite.render(tempPile);
 
-
-				lp.add(tempPile, JLayeredPane.DRAG_LAYER);
-
-				Point pos = getLocationOnScreen();
+				Point pos = mouseInLayers(e);
 				mouseOffset = e.getPoint();
-				pos.x = e.getLocationOnScreen().x - pos.x - mouseOffset.x;
-				pos.y = e.getLocationOnScreen().y - pos.y - mouseOffset.y;
 				
-				tempPile.setLocation(pos);
+				dragSprite.setLocation(pos.x - mouseOffset.x, pos.y - mouseOffset.y);
+				dragSprite.setVisible(true);
 				
-				repaint();
+				// The cards left the pile
+				p.getParent().repaint(area.x, area.y, area.width, area.height);
+				lp.repaint(dragSprite.getBounds());
 			}
 		}
 
@@ -324,44 +782,144 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 		public void mouseReleased(MouseEvent e) {
 			if(tempPile != null) {
 				
-				Point mousePos = e.getLocationOnScreen();
-				boolean match = false;
+				Point pos = mouseInLayers(e);
 				
-				// Check if pile can merge with the pile it is dropped on
-				ArrayList<Pile> droppable = new ArrayList<Pile>(game.piles);
-				droppable.addAll(game.finalPiles);
+				Pile src = tempPile.parent;
+				int start = src.cards.size();
 				
-				for(Pile p: droppable) {
-					Point pilePos = p.getLocationOnScreen();
-					Rectangle r = p.getBounds();
-					r.x = pilePos.x;
-					r.y = pilePos.y;
-					
-					if(r.contains(mousePos) && p.acceptsPile(tempPile)) {
-						p.merge(tempPile);
-						match = true;
-						break;
-					}
-				}
+				// Check if pile can merge with the pile it is dropped on
+				Pile target = dropIndex.find(pos.x, pos.y);
+				if(target != null && !target.acceptsPile(tempPile)) target = null;
 				
-				// Snap back if no merge is found
-				if(!match) tempPile.parent.merge(tempPile);
-					
-				lp.remove(tempPile);
+				highlightDrop(null);
+				dragSprite.setVisible(false);
+				lp.repaint(dragSprite.getBounds());
+				tempPile.clear();
 				tempPile = null;
-
-				repaint();
 				
-				if(game.checkWin()) {
-					JOptionPane.showMessageDialog(this, "You won! Congrats!");
-					reset();
-				}
+				drop(src.index, start, target == null ? -1 : target.index);
+			}
+		}
+		
+		/**
+		 * Plays the automatic moves. The piles are updated by the change events,
+		 * and painted together on the next paint.
+		 */
+		void afterMove() {
+			if(safeMoves.isSelected()) game.autoPlay(true);
+			if(game.canAutoComplete()) game.autoComplete();
+			
+			if(game.checkWin()) {
+				JOptionPane.showMessageDialog(this, "You won! Congrats!");
+				reset();
+			}
+		}
+		
+		/**
+		 * Plays a click on a card, for both renderers: draws a card, turns the
+		 * get pile back from the empty draw pile or turns a column card.
+		 * A double click sends the top card to the foundations
+		 * @param {Integer} pile
+		 * @param {Integer} index Position of the clicked card, -1 for an empty pile
+		 * @param {Integer} clicks
+		 */
+		void click(int pile, int index, int clicks) {
+			if(replayBar != null || Table.isFoundation(pile)) return;
+			
+			// Double click sends the top card to the foundations
+			if(clicks == 2 && pile != Table.STOCK && index != -1 && index == game.table.size(pile) - 1
+					&& !game.table.isFaceDown(pile, index) && game.moveToFoundation(pile)) {
+				afterMove();
+				return;
 			}
+			
+			// The empty draw pile takes the get pile back
+			boolean moved = false;
+			if(pile == Table.STOCK) moved = game.drawCard() || game.turnGetPile();
+			else if(Table.isTableau(pile)) moved = game.clickPile(pile);
+			
+			if(moved) afterMove();
+		}
+		
+		/**
+		 * Tests whether a drag can start on a card
+		 * @param {Integer} pile
+		 * @param {Integer} index Position of the first dragged card
+		 * @return {Boolean}
+		 */
+		boolean pick(int pile, int index) {
+			// The player did not wait for the hint
+			hints.cancel();
+			
+			if(replayBar != null || index == -1 || !game.table.canPick(pile, index)) return false;
+			
+			frames.reset();
+			return true;
+		}
+		
+		/**
+		 * Ends a drag: moves the cards to the target pile,
+		 * or else the renderer puts them back on their pile
+		 * @param {Integer} src
+		 * @param {Integer} start Position of the first dragged card
+		 * @param {Integer} dst The target pile, -1 if none
+		 */
+		void drop(int src, int start, int dst) {
+			if(showFrames) System.out.println("Drag: " + frames);
+			
+			// Cards snap back if no move was done
+			if(dst == -1 || !game.movePile(src, start, dst)) {
+				Engine.Listener view = canvas != null ? canvas : this;
+				view.pileChanged(src, start, game.table.size(src));
+				return;
+			}
+			
+			afterMove();
 		}
 		
 		public void mouseEntered(MouseEvent arg0) {}
 		public void mouseExited(MouseEvent arg0) {}
 		
+		/**
+		 * Image of the dragged cards. The cards are painted once when the
+		 * drag starts, then every mouse move only copies the image.
+		 */
+		class DragSprite extends JComponent {
+			BufferedImage image;
+			
+			/**
+			 * Paints the cards of a pile into the image
+			 * @param {Pile} pile
+			 */
+			void render(Pile pile) {
+				int width = pile.getWidth();
+				int height = pile.getHeight();
+				
+				// The image is reused while it is big enough
+				if(image == null || image.getWidth() < width || image.getHeight() < height) {
+					GraphicsConfiguration config = getGraphicsConfiguration();
+					if(config != null)
+						image = config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+					else
+						image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+				}
+				
+				Graphics2D g = image.createGraphics();
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(0, 0, image.getWidth(), image.getHeight());
+				g.setComposite(AlphaComposite.SrcOver);
+				pile.paint(g);
+				g.dispose();
+				
+				setSize(width, height);
+			}
+			
+			@Override
+			protected void paintComponent(Graphics g) {
+				g.drawImage(image, 0, 0, null);
+			}
+		}
+		
 		public class JPanelWithBackground extends JPanel {
 			  private Image backgroundImage;
 
@@ -372,6 +930,10 @@ public class GUI extends JFrame implements ActionListener, MouseListener,
 				URL urlToImage = this.getClass().getResource(fileName);
 			  	backgroundImage = ImageIO.read(urlToImage);
 			  }
+			  
+			  public JPanelWithBackground(Image backgroundImage) {
+				this.backgroundImage = backgroundImage;
+			  }
 
 			  public void paintComponent(Graphics g) {
 			    super.paintComponent(g);
@@ -1,5 +1,7 @@
 package solitaire;
 
+import java.io.File;
+
 public class Game {
 
 	Engine game;
@@ -7,6 +9,7 @@ public class Game {
 	
 	public Game() {
 		game = new Engine();
+		game.openJournal(new File("journal.dat"));
 		gui = new GUI(game);
 	}
 	
@@ -0,0 +1,142 @@
+package solitaire;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Looks for the best move in the background, so the GUI never waits for the Solver.
+ * A search has a time budget and is cancelled as soon as the player moves.
+ * The hints are cached by position, asking again for the same position
+ * returns at once.
+ */
+public class Hints {
+
+	// Time budget of one search, in milliseconds
+	static final long BUDGET = 1000;
+	static final long MAX_NODES = 2000000;
+	static final int CACHE_SIZE = 1024;
+
+	/**
+	 * Receives the hints on the event dispatch thread,
+	 * or at once on the calling thread when the hint was cached
+	 */
+	public interface Listener {
+		/**
+		 * @param {Integer} move The suggested move, or -1 if no move helps
+		 */
+		void hintFound(int move);
+	}
+
+	final ExecutorService executor;
+	final Solver solver;
+	final Map<Long, Integer> cache;
+
+	// Changed by every request and cancel, older searches are ignored
+	volatile int generation;
+
+	/**
+	 * Class constructor
+	 */
+	public Hints() {
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Hints");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+
+		// Leave a core for the GUI
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		solver = new Solver(threads, MAX_NODES, BUDGET, new TranspositionTable(16 << 20));
+		solver.threadPriority = Thread.MIN_PRIORITY;
+
+		// Least recently used positions are dropped first
+		cache = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+	}
+
+	/**
+	 * Looks for a hint for a position. The listener is not called if the
+	 * request is cancelled first.
+	 * @param {Table} position Copied, it can change while searching
+	 * @param {Listener} listener
+	 */
+	public void request(Table position, final Listener listener) {
+		final int request = ++generation;
+		final Table table = new Table();
+		table.copyFrom(position);
+
+		synchronized(cache) {
+			Integer move = cache.get(table.hash());
+			if(move != null) {
+				listener.hintFound(move);
+				return;
+			}
+		}
+
+		// Stop the previous search, a cancel after this stops the new one
+		solver.cancel();
+		final int ticket = solver.ticket();
+		executor.execute(new Runnable() {
+			public void run() {
+				if(request != generation) return;
+
+				final int move = search(table, ticket);
+				if(request != generation) return;
+
+				synchronized(cache) {
+					cache.put(table.hash(), move);
+				}
+
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if(request == generation) listener.hintFound(move);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stops the running search, its result is dropped
+	 */
+	public void cancel() {
+		++generation;
+		solver.cancel();
+	}
+
+	/**
+	 * Returns the first move of a solution, or else the best move
+	 * in the Solver order
+	 */
+	int search(Table table, int ticket) {
+		if(solver.solve(table, ticket) == Solver.Status.Won && solver.solution().length > 0)
+			return solver.solution()[0];
+
+		int[] moves = new int[Move.MAX_MOVES];
+		int count = table.legalMoves(moves);
+		int best = -1;
+		int bestPriority = Solver.PRIORITY_LEVELS;
+
+		for(int i = 0; i < count; ++i) {
+			if(Move.isFlip(moves[i])) return moves[i];
+
+			int priority = Solver.priority(table, moves[i]);
+			if(priority < bestPriority) {
+				best = moves[i];
+				bestPriority = priority;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,82 @@
+package solitaire;
+
+/**
+ * Undo/redo history of a game.
+ * Every move is stored as its packed int (see Move), the moves after
+ * the current position are the ones that can be redone.
+ * The array grows by half when full: 10000 moves take about 59KB.
+ */
+public class History {
+
+	int[] moves;
+	int size;
+	int position;
+
+	/**
+	 * Class constructor
+	 */
+	public History() {
+		moves = new int[256];
+	}
+
+	/**
+	 * Adds a move played by the player. The moves that could be redone are dropped.
+	 * @param {Integer} move
+	 */
+	public void push(int move) {
+		if(position == moves.length) {
+			int[] bigger = new int[moves.length + (moves.length >> 1)];
+			System.arraycopy(moves, 0, bigger, 0, position);
+			moves = bigger;
+		}
+
+		moves[position++] = move;
+		size = position;
+	}
+
+	public boolean canUndo() {
+		return position > 0;
+	}
+
+	public boolean canRedo() {
+		return position < size;
+	}
+
+	/**
+	 * Steps back one move
+	 * @return {Integer} The move to revert
+	 */
+	public int undo() {
+		return moves[--position];
+	}
+
+	/**
+	 * Steps forward one move
+	 * @return {Integer} The move to apply again
+	 */
+	public int redo() {
+		return moves[position++];
+	}
+
+	/**
+	 * Removes all the moves, when a new game starts
+	 */
+	public void clear() {
+		size = 0;
+		position = 0;
+	}
+
+	/**
+	 * Returns the number of moves played to reach the current position
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * Returns the number of moves stored, including the ones that can be redone
+	 */
+	public int size() {
+		return size;
+	}
+}
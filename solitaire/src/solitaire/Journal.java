@@ -0,0 +1,300 @@
+package solitaire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of the moves, used to resume the game after a crash.
+ * The file starts with a Snapshot of the game, followed by one record per move
+ * or undone move.
+ * Recording a move only adds it to a buffer in memory. A background thread
+ * swaps the buffer and writes it to the disk: every 32 moves, or at most one
+ * second after a move. Every 512 moves the file is compacted into a new
+ * snapshot, also written by the background thread, so the replay on launch
+ * stays short.
+ */
+public class Journal implements Closeable {
+
+	static final byte SNAPSHOT = 'S';
+	static final byte MOVE = 'M';
+	static final byte UNDO = 'U';
+	static final int MOVE_BYTES = 5;
+
+	static final int SYNC_MOVES = 32;
+	static final long SYNC_MILLIS = 1000;
+	static final int COMPACT_MOVES = 512;
+
+	final File file;
+	final ScheduledExecutorService writer;
+
+	// Filled by the game, guarded by this
+	ByteBuffer buffer;
+	byte[] snapshot;
+	int snapshotLength;
+	int pending;
+	int movesSinceSnapshot;
+	boolean open;
+	boolean flushQueued;
+
+	// Written by the background thread, guarded by io
+	final Object io = new Object();
+	ByteBuffer spare;
+	byte[] spareSnapshot;
+	FileChannel channel;
+
+	final Runnable flush = new Runnable() {
+		public void run() {
+			try {
+				flush();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	};
+
+	/**
+	 * Class constructor. The journal is not changed until a snapshot is written.
+	 * @param {File} file
+	 */
+	public Journal(File file) {
+		this.file = file;
+		buffer = ByteBuffer.allocate(SYNC_MOVES * MOVE_BYTES);
+		spare = ByteBuffer.allocate(SYNC_MOVES * MOVE_BYTES);
+		snapshot = new byte[Snapshot.MAX_SIZE + 2];
+		spareSnapshot = new byte[Snapshot.MAX_SIZE + 2];
+
+		writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// Writes the moves of an idle player
+		writer.scheduleWithFixedDelay(flush, SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Restores the last position saved in the journal: the newest snapshot,
+	 * followed by all the moves written after it. A record cut by a crash is ignored.
+	 * @param {Table} table Receives the position, only changed if one is found
+	 * @return {Long} The deal number, or null if the journal holds no game.
+	 * Any long is a deal number, -1 included.
+	 */
+	public synchronized Long recover(Table table) throws IOException {
+		if(!file.exists()) return null;
+
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Table replay = new Table();
+		int[] legal = new int[Move.MAX_MOVES];
+		long deal = 0;
+		boolean found = false;
+		int pos = 0;
+
+		while(pos < bytes.length) {
+			if(bytes[pos] == SNAPSHOT && pos + 1 < bytes.length) {
+				int length = bytes[pos + 1] & 0xFF;
+				if(pos + 2 + length > bytes.length) break;
+
+				deal = Snapshot.read(bytes, pos + 2, length, replay);
+				found = true;
+				pos += 2 + length;
+			} else if(bytes[pos] == MOVE && pos + MOVE_BYTES <= bytes.length && found) {
+				int move = ByteBuffer.wrap(bytes, pos + 1, 4).getInt();
+				if(!isLegal(replay, move, legal)) break;
+
+				replay.apply(move);
+				pos += MOVE_BYTES;
+			} else if(bytes[pos] == UNDO && pos + MOVE_BYTES <= bytes.length && found) {
+				replay.undo(ByteBuffer.wrap(bytes, pos + 1, 4).getInt());
+				pos += MOVE_BYTES;
+			} else {
+				break;
+			}
+		}
+
+		if(!found) return null;
+
+		table.copyFrom(replay);
+		return deal;
+	}
+
+	static boolean isLegal(Table table, int move, int[] legal) {
+		int count = table.legalMoves(legal);
+
+		for(int i = 0; i < count; ++i) {
+			if(legal[i] == move) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the whole journal with a snapshot of the game.
+	 * The snapshot is written by the background thread.
+	 * @param {Table} table
+	 * @param {Long} deal
+	 */
+	public synchronized void snapshot(Table table, long deal) {
+		if(writer.isShutdown()) return;
+
+		snapshotLength = Snapshot.write(table, deal, snapshot, 2) + 2;
+		snapshot[0] = SNAPSHOT;
+		snapshot[1] = (byte)(snapshotLength - 2);
+
+		// The moves before the snapshot are in it
+		buffer.clear();
+		pending = 0;
+		movesSinceSnapshot = 0;
+		open = true;
+		requestFlush();
+	}
+
+	/**
+	 * Adds a move to the journal
+	 * @param {Integer} move The move that was applied
+	 * @param {Table} table The state after the move, used for the periodic snapshots
+	 * @param {Long} deal
+	 */
+	public void append(int move, Table table, long deal) {
+		write(MOVE, move, table, deal);
+	}
+
+	/**
+	 * Adds an undone move to the journal
+	 * @param {Integer} move The move that was reverted
+	 * @param {Table} table The state after the undo
+	 * @param {Long} deal
+	 */
+	public void appendUndo(int move, Table table, long deal) {
+		write(UNDO, move, table, deal);
+	}
+
+	/**
+	 * Only adds the record to the buffer, the disk is left to the background thread
+	 */
+	synchronized void write(byte type, int move, Table table, long deal) {
+		if(!open) return;
+
+		if(++movesSinceSnapshot >= COMPACT_MOVES) {
+			snapshot(table, deal);
+			return;
+		}
+
+		// The background thread may be waiting for the disk
+		if(buffer.remaining() < MOVE_BYTES) {
+			ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+
+		buffer.put(type).putInt(move);
+		if(++pending >= SYNC_MOVES) requestFlush();
+	}
+
+	private void requestFlush() {
+		if(flushQueued) return;
+
+		flushQueued = true;
+		writer.execute(flush);
+	}
+
+	/**
+	 * Writes the buffered records, and the new snapshot if there is one,
+	 * to the disk. Called by the background thread, and by close().
+	 */
+	void flush() throws IOException {
+		synchronized(io) {
+			int length;
+
+			// Take the records, the game goes on with the other buffer
+			synchronized(this) {
+				flushQueued = false;
+				if(snapshotLength == 0 && pending == 0) return;
+
+				ByteBuffer records = buffer;
+				buffer = spare;
+				spare = records;
+
+				byte[] bytes = snapshot;
+				snapshot = spareSnapshot;
+				spareSnapshot = bytes;
+
+				length = snapshotLength;
+				snapshotLength = 0;
+				pending = 0;
+			}
+
+			if(length > 0) writeSnapshot(spareSnapshot, length);
+
+			spare.flip();
+			if(channel != null) {
+				while(spare.hasRemaining())
+					channel.write(spare);
+				channel.force(false);
+			}
+			spare.clear();
+		}
+	}
+
+	/**
+	 * Writes a new file and swaps it in, so a crash leaves either file complete
+	 */
+	private void writeSnapshot(byte[] bytes, int length) throws IOException {
+		if(channel != null) {
+			channel.close();
+			channel = null;
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(temp, "rw");
+		try {
+			out.setLength(0);
+			out.write(bytes, 0, length);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		RandomAccessFile journal = new RandomAccessFile(file, "rw");
+		channel = journal.getChannel();
+		channel.position(channel.size());
+	}
+
+	/**
+	 * Writes the buffered moves to the disk and waits for them
+	 */
+	public void sync() throws IOException {
+		flush();
+	}
+
+	/**
+	 * Writes the buffered moves and closes the file
+	 */
+	public void close() throws IOException {
+		synchronized(this) {
+			if(!open) return;
+			open = false;
+		}
+		writer.shutdown();
+
+		synchronized(io) {
+			flush();
+			if(channel != null) channel.close();
+			channel = null;
+		}
+	}
+}
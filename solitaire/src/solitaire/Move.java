@@ -0,0 +1,74 @@
+package solitaire;
+
+/**
+ * Moves are packed into a single int, so they can be stored in primitive arrays:
+ * bits 0-3 the source pile, bits 4-7 the destination pile, bits 8-12 the number
+ * of moved cards and bit 13 is set when the move turns a column card face-up.
+ *
+ * Drawing a card is a move from the draw pile to the get pile, and turning
+ * the get pile is a move of all its cards back to the draw pile.
+ */
+public final class Move {
+
+	static final int PILE_BITS = 0xF;
+	static final int COUNT_BITS = 0x1F;
+	static final int FLIP = 1 << 13;
+
+	/**
+	 * Upper bound of the number of moves possible in any state
+	 */
+	public static final int MAX_MOVES = Table.COLUMNS * Table.COLUMN_CAPACITY * (Table.COLUMNS - 1)
+			+ (Table.COLUMNS + 1) * (Table.FOUNDATIONS + Table.COLUMNS) + Table.COLUMNS + 2;
+
+	private Move() {}
+
+	/**
+	 * Encodes a move of cards from the top of a pile to another pile
+	 * @param {Integer} src The source pile
+	 * @param {Integer} dst The destination pile
+	 * @param {Integer} count Number of moved cards
+	 */
+	public static int of(int src, int dst, int count) {
+		return src | dst << 4 | count << 8;
+	}
+
+	/**
+	 * Encodes turning the top card of a column face-up
+	 * @param {Integer} pile
+	 */
+	public static int flip(int pile) {
+		return pile | pile << 4 | FLIP;
+	}
+
+	public static int src(int move) {
+		return move & PILE_BITS;
+	}
+
+	public static int dst(int move) {
+		return move >> 4 & PILE_BITS;
+	}
+
+	public static int count(int move) {
+		return move >> 8 & COUNT_BITS;
+	}
+
+	public static boolean isFlip(int move) {
+		return (move & FLIP) != 0;
+	}
+
+	public static boolean isDraw(int move) {
+		return src(move) == Table.STOCK;
+	}
+
+	public static boolean isTurn(int move) {
+		return dst(move) == Table.STOCK;
+	}
+
+	/**
+	 * Returns a readable description of the move, eg: "11->12 x1"
+	 */
+	public static String toString(int move) {
+		if(isFlip(move)) return "flip " + src(move);
+		return src(move) + "->" + dst(move) + " x" + count(move);
+	}
+}
@@ -9,16 +9,23 @@ import javax.swing.JLayeredPane;
 
 import solitaire.Card.Suit;
 
+/**
+ * Displays one pile of the game model.
+ * The cards are Card components, the state of the pile is kept in the Table.
+ */
 public class Pile extends JLayeredPane {
 
 	Card base;
 	ArrayList<Card> cards;
 	int offset = 15;
-	Suit suitFilter;
 	int width;
 	Pile parent;
 	PileType type;
 	
+	// The pile of the model which is displayed
+	Table table;
+	int index = -1;
+	
 	enum PileType {Normal, Draw, Get, Final};
 	
 	/**
@@ -41,11 +48,15 @@ public class Pile extends JLayeredPane {
 	 * @param {Card} c The card to be added
 	 */
 	public void addCard(Card c) {
+		place(c);
+		updateSize();
+	}
+	
+	private void place(Card c) {
 		c.setLocation(0, offset * cards.size());
 		cards.add(c);
 
 		this.add(c, 1, 0);
-		updateSize();
 	}
 	
 	/**
@@ -100,6 +111,36 @@ public class Pile extends JLayeredPane {
 
 		this.setPreferredSize(new Dimension(width, height));
 		this.setSize(width, height);
+		
+		cull();
+	}
+	
+	/**
+	 * Paints only what can be seen: the top card of a pile without offset,
+	 * the visible strip of the covered cards of a column. The base is only
+	 * painted when the pile is empty.
+	 * Hidden cards are taken out of the pile component, setVisible() would
+	 * call Card.hide() and turn them.
+	 */
+	private void cull() {
+		show(base, cards.isEmpty());
+		
+		for(int i = 0; i < cards.size(); ++i) {
+			Card c = cards.get(i);
+			boolean top = i == cards.size() - 1;
+			
+			show(c, top || offset > 0);
+			c.visibleHeight = top ? 0 : offset + Card.CORNER;
+		}
+	}
+	
+	private void show(Card c, boolean visible) {
+		if(visible && c.getParent() != this) {
+			// On top of the cards already shown
+			this.add(c, 1, 0);
+		} else if(!visible && c.getParent() == this) {
+			this.remove(c);
+		}
 	}
 	
 	
@@ -112,14 +153,55 @@ public class Pile extends JLayeredPane {
 		updateSize();
 	}
 	
+	/**
+	 * Rebuilds the pile from the game model
+	 * @param {Card[]} views The card components, indexed by card ordinal
+	 */
+	public void sync(Card[] views) {
+		sync(views, 0);
+	}
+	
+	/**
+	 * Updates the cards of the pile from the given position up,
+	 * the cards below are kept. The size is updated once.
+	 * @param {Card[]} views The card components, indexed by card ordinal
+	 * @param {Integer} from
+	 */
+	public void sync(Card[] views, int from) {
+		while(cards.size() > from) {
+			this.remove(cards.remove(cards.size() - 1));
+		}
+		
+		for(int i = cards.size(); i < table.size(index); ++i) {
+			Card c = views[table.cardAt(index, i)];
+			c.isReversed = table.isFaceDown(index, i);
+			place(c);
+		}
+		
+		updateSize();
+	}
+	
+	/**
+	 * Removes all the cards from the pile
+	 */
+	public void clear() {
+		for(Card c: cards)
+			this.remove(c);
+		
+		cards.clear();
+		updateSize();
+	}
+	
 	/**
 	 * Breaks the pile into two piles
-	 * The top half is kept in this pile
+	 * The top half is kept in this pile, the rest is moved into the given pile.
+	 * The given pile is emptied first, so the same pile can be reused for every drag.
 	 * @param {Card} first The card where the break starts
-	 * @return
+	 * @param {Pile} p The pile which receives the cards
+	 * @return {Pile} The given pile
 	 */
-	public Pile split(Card first) {
-		Pile p = new Pile(100);
+	public Pile split(Card first, Pile p) {
+		p.clear();
 		
 		for(int i = 0; i < cards.size(); ++i) {
 			if(cards.get(i) == first) {
@@ -147,22 +229,6 @@ public class Pile extends JLayeredPane {
 		updateSize();
 	}
 	
-	/**
-	 * Searches for a card in the pack based on value and suit name.
-	 * @param {int} value
-	 * @param {String} suitName
-	 * @return {Card} The found card
-	 */
-	public Card searchCard(int value, String suitName) {
-		
-		for(Card c: cards) {
-			if(c.value == value && c.suit.name().equals(suitName))
-				return c;
-		}
-		
-		return null;
-	}
-	
 	/**
 	 * Checks wether the pile is empty or not
 	 * @return {Boolean} True if the pile is empty
@@ -172,80 +238,22 @@ public class Pile extends JLayeredPane {
 	}
 	
 	/**
-	 * Solitaire conditions to check if a move is valid
+	 * Solitaire conditions to check if a move is valid.
+	 * The given pile must have been split from another pile,
+	 * the rules are checked against the game model.
 	 */
 	public boolean acceptsPile(Pile p) {
 		// Can not add to itself
-		if(this == p) return false;
-		
-		Card newCard = p.cards.get(0);
-		Card topCard;
+		if(this == p || p.parent == null || p.cards.isEmpty()) return false;
 		
-		switch(type) {
-			case Normal:
-				// If it's empty it can only receive a King
-				if(cards.isEmpty()) {
-					if(newCard.value == 14) return true;
-					return false;
-				}
-				
-				topCard = cards.get(cards.size() - 1);
-				if(topCard.isReversed) return false;
-				
-				// Different color, consecutive values, descending
-				if(topCard.suit.isRed != newCard.suit.isRed)
-				   if(topCard.value == newCard.value + 1 ||
-				      topCard.value ==  12 && newCard.value == 10) {
-					   return true;				
-				   }
-			break;
-			
-			case Final:
-				
-				// Merge with a single card
-				if(p.cards.size() > 1) return false;
-				
-				// Start with an ace
-				if(cards.isEmpty() && newCard.value == 1) {
-					suitFilter = newCard.suit;
-					return true;
-				}
-				
-				// Has to be the same color
-				if(suitFilter != newCard.suit) return false;
-				
-				// Consecutive values, ascending
-				topCard = cards.get(cards.size() - 1);
-				if(topCard.value == newCard.value - 1 ||
-				   topCard.value ==  10 && newCard.value == 12) {
-					return true;
-				}
-			break;
-		}
-		return false;
+		// The cards below the split are still in the parent pile
+		return table.accepts(p.parent.index, p.parent.cards.size(), index);
 	}
 	
 	public boolean isOptimizedDrawingEnabled() {
         return false;
 	}
 
-	@Override
-	/**
-	 * Returns a string that contains all the cards in the pile.
-	 * @return {String} "-" Separated cards
-	 */
-	public String toString() {
-		String result = "";
-		
-		result += base.saveAsString() + "-";
-		
-		for(Card c : cards) {
-			result += c.saveAsString() + "-";
-		}
-		
-		return result;
-	}
-	
 	// Change baseline, so pile is aligned to top
 	@Override
 	public Component.BaselineResizeBehavior getBaselineResizeBehavior() {
@@ -0,0 +1,188 @@
+package solitaire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Recorded game: the deal number, the starting position and every move played.
+ * A Snapshot of the game is kept every 64 moves (keyframes), so any move
+ * can be reached by replaying at most 63 moves.
+ *
+ * Layout: the "SOLR" magic, a version byte, the deal number (8 bytes),
+ * the keyframe interval, the number of moves and the number of keyframes
+ * (4 bytes each), then the keyframes in slots of fixed size (the snapshot
+ * length followed by the snapshot), then the packed moves (4 bytes each).
+ *
+ * The file is memory mapped, only the parts that are read are loaded.
+ */
+public class Replay implements Closeable {
+
+	static final byte[] MAGIC = {'S', 'O', 'L', 'R'};
+	static final int VERSION = 1;
+	static final int KEYFRAME_INTERVAL = 64;
+
+	static final int HEADER = MAGIC.length + 1 + 8 + 4 + 4 + 4;
+	static final int SLOT = 1 + Snapshot.MAX_SIZE;
+
+	final RandomAccessFile file;
+	final MappedByteBuffer buffer;
+	final long deal;
+	final int interval;
+	final int length;
+	final int keyframes;
+
+	// The moves of the file are checked on these before they are played
+	final int[] legal = new int[Move.MAX_MOVES];
+	final Table scratch = new Table();
+
+	/**
+	 * Opens a recorded game
+	 * @param {File} file
+	 * @throws IOException If the file is not a valid replay
+	 */
+	public Replay(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = this.file.getChannel();
+			if(channel.size() < HEADER || channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Not a replay");
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			for(int i = 0; i < MAGIC.length; ++i) {
+				if(buffer.get(i) != MAGIC[i]) throw new IOException("Not a replay");
+			}
+			if(buffer.get(MAGIC.length) != VERSION)
+				throw new IOException("Unsupported replay version " + buffer.get(MAGIC.length));
+
+			deal = buffer.getLong(MAGIC.length + 1);
+			interval = buffer.getInt(MAGIC.length + 9);
+			length = buffer.getInt(MAGIC.length + 13);
+			keyframes = buffer.getInt(MAGIC.length + 17);
+
+			if(interval <= 0 || length < 0 || keyframes != length / Math.max(interval, 1) + 1
+					|| buffer.capacity() != HEADER + (long)keyframes * SLOT + length * 4L)
+				throw new IOException("Truncated replay");
+		} catch(IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Records a game
+	 * @param {File} file
+	 * @param {Table} start The position before the first move
+	 * @param {Long} deal The deal number
+	 * @param {Integer[]} moves The packed moves
+	 * @param {Integer} length The number of moves
+	 */
+	public static void write(File file, Table start, long deal, int[] moves, int length) throws IOException {
+		int keyframes = length / KEYFRAME_INTERVAL + 1;
+		byte[] bytes = new byte[HEADER + keyframes * SLOT + length * 4];
+		ByteBuffer out = ByteBuffer.wrap(bytes);
+
+		out.put(MAGIC).put((byte)VERSION).putLong(deal);
+		out.putInt(KEYFRAME_INTERVAL).putInt(length).putInt(keyframes);
+
+		// Play the game again to take the keyframes
+		Table table = new Table();
+		table.copyFrom(start);
+
+		for(int i = 0; i <= length; ++i) {
+			if(i % KEYFRAME_INTERVAL == 0) {
+				int slot = HEADER + i / KEYFRAME_INTERVAL * SLOT;
+				bytes[slot] = (byte)Snapshot.write(table, deal, bytes, slot + 1);
+			}
+			if(i < length) table.apply(moves[i]);
+		}
+
+		out.position(HEADER + keyframes * SLOT);
+		for(int i = 0; i < length; ++i)
+			out.putInt(moves[i]);
+
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(bytes);
+		} finally {
+			stream.close();
+		}
+	}
+
+	public long deal() {
+		return deal;
+	}
+
+	/**
+	 * Returns the number of moves of the game
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Returns the i-th move of the game
+	 * @param {Integer} i
+	 */
+	public int move(int i) {
+		return buffer.getInt(HEADER + keyframes * SLOT + i * 4);
+	}
+
+	/**
+	 * Sets a table to the position after the given number of moves,
+	 * starting from the closest keyframe. The table is only changed
+	 * if the keyframe and the moves are valid.
+	 * @param {Integer} position From 0 to length
+	 * @param {Table} table
+	 * @throws IOException If the replay is corrupted
+	 */
+	public void seek(int position, Table table) throws IOException {
+		if(position < 0 || position > length) throw new IOException("No move " + position + " in the replay");
+
+		int keyframe = position / interval;
+		int slot = HEADER + keyframe * SLOT;
+
+		byte[] snapshot = new byte[buffer.get(slot) & 0xFF];
+		if(snapshot.length > Snapshot.MAX_SIZE) throw new IOException("Corrupted replay, bad keyframe " + keyframe);
+		for(int i = 0; i < snapshot.length; ++i)
+			snapshot[i] = buffer.get(slot + 1 + i);
+		Snapshot.read(snapshot, 0, snapshot.length, scratch);
+
+		for(int i = keyframe * interval; i < position; ++i)
+			play(i, scratch);
+
+		table.copyFrom(scratch);
+	}
+
+	/**
+	 * Plays the i-th move of the game on a table, if it is legal there
+	 * @param {Integer} i
+	 * @param {Table} table
+	 * @throws IOException If the move is not legal, the table is not changed
+	 */
+	public void play(int i, Table table) throws IOException {
+		if(i < 0 || i >= length) throw new IOException("No move " + i + " in the replay");
+
+		int move = move(i);
+		int n = table.legalMoves(legal);
+
+		for(int k = 0; k < n; ++k) {
+			if(legal[k] == move) {
+				table.apply(move);
+				return;
+			}
+		}
+		throw new IOException("Corrupted replay, move " + i + " is not legal");
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
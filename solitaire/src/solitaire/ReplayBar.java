@@ -0,0 +1,164 @@
+package solitaire;
+
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Controls of the replay player: play/pause, step back and forward,
+ * and a slider to jump to any move.
+ * The replayed position is shown in the game table, the game is put
+ * back when the player is closed.
+ */
+public class ReplayBar extends JPanel implements ActionListener, ChangeListener {
+
+	// Delay between two moves while playing, in milliseconds
+	static final int PLAY_DELAY = 400;
+
+	final GUI gui;
+	final Replay replay;
+	final Table table;
+	final Table game;
+	int position;
+
+	final JButton play, back, step, close;
+	final JSlider slider;
+	final JLabel label;
+	final Timer timer;
+
+	/**
+	 * Class constructor, shows the start of the replay
+	 * @param {GUI} gui
+	 * @param {Replay} replay
+	 */
+	public ReplayBar(GUI gui, Replay replay) throws IOException {
+		super(new FlowLayout(FlowLayout.CENTER));
+		this.gui = gui;
+		this.replay = replay;
+
+		// Keep the game to put it back at the end
+		table = gui.game.table;
+		game = new Table();
+		game.copyFrom(table);
+
+		back = button("<");
+		play = button("Play");
+		step = button(">");
+
+		slider = new JSlider(0, replay.length(), 0);
+		slider.addChangeListener(this);
+		add(slider);
+
+		label = new JLabel();
+		add(label);
+
+		close = button("Close");
+
+		timer = new Timer(PLAY_DELAY, this);
+
+		replay.seek(0, table);
+		update();
+	}
+
+	private JButton button(String text) {
+		JButton button = new JButton(text);
+		button.addActionListener(this);
+		add(button);
+		return button;
+	}
+
+	public void actionPerformed(ActionEvent e) {
+		Object source = e.getSource();
+
+		if(source == timer || source == step) {
+			if(position == replay.length()) {
+				pause();
+				return;
+			}
+
+			try {
+				replay.play(position, table);
+				position++;
+			} catch(IOException ex) {
+				pause();
+				ex.printStackTrace();
+			}
+			update();
+		} else if(source == back) {
+			pause();
+			if(position == 0) return;
+
+			// Played again from the keyframe, so every move is checked
+			try {
+				replay.seek(position - 1, table);
+				position--;
+			} catch(IOException ex) {
+				ex.printStackTrace();
+			}
+			update();
+		} else if(source == play) {
+			if(timer.isRunning()) {
+				pause();
+			} else {
+				timer.start();
+				play.setText("Pause");
+			}
+		} else if(source == close) {
+			gui.closeReplay();
+		}
+	}
+
+	/**
+	 * Jumps to the move chosen with the slider
+	 */
+	public void stateChanged(ChangeEvent e) {
+		if(slider.getValue() == position) return;
+
+		try {
+			replay.seek(slider.getValue(), table);
+			position = slider.getValue();
+		} catch(IOException ex) {
+			ex.printStackTrace();
+		}
+		update();
+	}
+
+	void pause() {
+		timer.stop();
+		play.setText("Play");
+	}
+
+	/**
+	 * Shows the current position
+	 */
+	void update() {
+		slider.setValue(position);
+		label.setText("Deal #" + replay.deal() + ", move " + position + " / " + replay.length());
+
+		gui.refresh();
+		gui.repaint();
+	}
+
+	/**
+	 * Stops the player and puts the game back
+	 */
+	void close() {
+		timer.stop();
+		table.copyFrom(game);
+
+		try {
+			replay.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package solitaire;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays many numbered deals with a Bot, without any GUI, on all the cores.
+ * Every game is played on a reused Engine of its worker thread, and only the
+ * totals are kept, so memory does not grow with the number of games.
+ */
+public class Simulation {
+
+	// A game is lost when the bot plays this many moves
+	static final int MAX_MOVES = 2000;
+
+	final Bot bot;
+	final int threads;
+
+	// Results of the last run
+	long games;
+	long wins;
+	long moves;
+	long elapsed;
+
+	/**
+	 * Class constructor
+	 * @param {Bot} bot The strategy, copied for each thread
+	 * @param {Integer} threads Number of worker threads
+	 */
+	public Simulation(Bot bot, int threads) {
+		this.bot = bot;
+		this.threads = threads;
+	}
+
+	/**
+	 * Plays the deals firstDeal to firstDeal + count - 1
+	 */
+	public void run(final long firstDeal, final long count) throws Exception {
+		final AtomicLong nextDeal = new AtomicLong(firstDeal);
+		final long lastDeal = firstDeal + count;
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+		long begin = System.nanoTime();
+
+		for(int i = 0; i < threads; ++i) {
+			results.add(pool.submit(new Callable<long[]>() {
+				public long[] call() {
+					Bot player = bot.copy();
+					Engine game = new Engine();
+					int[] buffer = new int[Move.MAX_MOVES];
+					long[] totals = new long[3];
+
+					long deal;
+					while((deal = nextDeal.getAndIncrement()) < lastDeal) {
+						int played = play(player, game, deal, buffer);
+
+						totals[0]++;
+						if(game.checkWin()) totals[1]++;
+						totals[2] += played;
+					}
+					return totals;
+				}
+			}));
+		}
+
+		games = wins = moves = 0;
+		for(Future<long[]> result : results) {
+			long[] totals = result.get();
+			games += totals[0];
+			wins += totals[1];
+			moves += totals[2];
+		}
+
+		elapsed = System.nanoTime() - begin;
+		pool.shutdown();
+	}
+
+	/**
+	 * Plays a single deal until it is won, the bot gives up, or it runs out of moves
+	 * @return {Integer} The number of moves played
+	 */
+	static int play(Bot player, Engine game, long deal, int[] buffer) {
+		game.resetCards(deal);
+		game.setupGame();
+		player.newGame(deal);
+
+		Table table = game.table;
+		int played = 0;
+		int idle = 0;
+
+		while(played < MAX_MOVES && !table.isWon()) {
+			int count = table.legalMoves(buffer);
+			if(count == 0) break;
+
+			int move = player.chooseMove(table, buffer, count);
+			if(move == -1) break;
+
+			table.apply(move);
+			played++;
+
+			// Give up after going twice through the draw pile without playing
+			if(Move.isDraw(move) || Move.isTurn(move)) {
+				if(++idle > 2 * (Table.CARDS + 1)) break;
+			} else {
+				idle = 0;
+			}
+		}
+
+		return played;
+	}
+
+	public double gamesPerSecond() {
+		return games * 1e9 / elapsed;
+	}
+
+	public double winRate() {
+		return games == 0 ? 0 : (double)wins / games;
+	}
+
+	/**
+	 * Returns the bounds of the 95% Wilson confidence interval of the win rate
+	 */
+	public double[] winRateInterval() {
+		double z = 1.96;
+		double n = games;
+		double p = winRate();
+
+		double center = (p + z * z / (2 * n)) / (1 + z * z / n);
+		double margin = z * Math.sqrt(p * (1 - p) / n + z * z / (4 * n * n)) / (1 + z * z / n);
+
+		return new double[] {center - margin, center + margin};
+	}
+
+	public double averageMoves() {
+		return games == 0 ? 0 : (double)moves / games;
+	}
+
+	/**
+	 * Arguments: bot (greedy or random), number of games, number of threads, first deal
+	 */
+	public static void main(String[] args) throws Exception {
+		Bot bot = args.length > 0 && args[0].equals("random") ? new Bot.RandomMoves() : new Bot.Greedy();
+		long count = args.length > 1 ? Long.parseLong(args[1]) : 100000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long first = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+		Simulation simulation = new Simulation(bot, threads);
+		simulation.run(first, count);
+
+		double[] interval = simulation.winRateInterval();
+		System.out.printf("%s bot, %d games on %d threads: %.0f games/s%n",
+				bot, simulation.games, threads, simulation.gamesPerSecond());
+		System.out.printf("win rate %.2f%% (95%% CI %.2f%% - %.2f%%), %.1f moves per game%n",
+				simulation.winRate() * 100, interval[0] * 100, interval[1] * 100, simulation.averageMoves());
+	}
+}
@@ -0,0 +1,187 @@
+package solitaire;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of a game.
+ * Layout: the "SOLT" magic, a version byte, the deal number (8 bytes),
+ * then for each of the 13 piles its size followed by one byte per card
+ * (the card ordinal, with the top bit set for face-down cards),
+ * and finally the CRC32 of all the previous bytes. A full game is 82 bytes.
+ */
+public final class Snapshot {
+
+	static final byte[] MAGIC = {'S', 'O', 'L', 'T'};
+	static final int VERSION = 1;
+	static final int FACE_DOWN = 0x80;
+
+	static final int HEADER = MAGIC.length + 1 + 8;
+	static final int CRC = 4;
+
+	/**
+	 * The largest size of a snapshot
+	 */
+	public static final int MAX_SIZE = HEADER + Table.PILES + Table.CARDS + CRC;
+
+	private Snapshot() {}
+
+	/**
+	 * Writes the state of a table
+	 * @param {Table} table
+	 * @param {Long} deal The deal number
+	 * @param {Byte[]} out Buffer of at least MAX_SIZE bytes from offset
+	 * @param {Integer} offset
+	 * @return {Integer} The number of bytes written
+	 */
+	public static int write(Table table, long deal, byte[] out, int offset) {
+		int pos = offset;
+
+		System.arraycopy(MAGIC, 0, out, pos, MAGIC.length);
+		pos += MAGIC.length;
+		out[pos++] = VERSION;
+
+		for(int shift = 56; shift >= 0; shift -= 8)
+			out[pos++] = (byte)(deal >>> shift);
+
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			int size = table.size(pile);
+			out[pos++] = (byte)size;
+
+			for(int i = 0; i < size; ++i)
+				out[pos++] = (byte)(table.cardAt(pile, i) | (table.isFaceDown(pile, i) ? FACE_DOWN : 0));
+		}
+
+		long crc = crc(out, offset, pos - offset);
+		for(int shift = 24; shift >= 0; shift -= 8)
+			out[pos++] = (byte)(crc >>> shift);
+
+		return pos - offset;
+	}
+
+	/**
+	 * Reads a snapshot into a table. The table is only changed if the
+	 * snapshot is valid.
+	 * @param {Byte[]} in
+	 * @param {Integer} offset
+	 * @param {Integer} length
+	 * @param {Table} table
+	 * @return {Long} The deal number
+	 * @throws IOException If the data is not a valid snapshot
+	 */
+	public static long read(byte[] in, int offset, int length, Table table) throws IOException {
+		if(!isSnapshot(in, offset, length) || length < HEADER + Table.PILES + CRC)
+			throw new IOException("Not a saved game");
+		if(in[offset + MAGIC.length] != VERSION)
+			throw new IOException("Unsupported save version " + in[offset + MAGIC.length]);
+
+		int end = offset + length - CRC;
+		long stored = 0;
+		for(int i = end; i < end + CRC; ++i)
+			stored = stored << 8 | (in[i] & 0xFF);
+
+		if(stored != crc(in, offset, length - CRC))
+			throw new IOException("Corrupted save, bad checksum");
+
+		int[][] piles = new int[Table.PILES][];
+		int[] sizes = new int[Table.PILES];
+		int pos = offset + HEADER;
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			if(pos >= end) throw new IOException("Truncated save");
+
+			int size = in[pos++];
+			if(size < 0 || size > capacity(pile) || pos + size > end)
+				throw new IOException("Corrupted save, bad size " + size + " of pile " + pile);
+
+			sizes[pile] = size;
+			piles[pile] = new int[size];
+			for(int i = 0; i < size; ++i)
+				piles[pile][i] = in[pos++] & 0xFF;
+		}
+		if(pos != end) throw new IOException("Truncated save");
+
+		check(piles, sizes);
+
+		long deal = 0;
+		for(int i = offset + MAGIC.length + 1; i < offset + HEADER; ++i)
+			deal = deal << 8 | (in[i] & 0xFF);
+
+		put(piles, sizes, table);
+		return deal;
+	}
+
+	/**
+	 * Checks saved piles before they are put on a table,
+	 * a pile too big would overwrite the cells of the next one
+	 * @param {Integer[][]} piles The cards of every pile from the bottom,
+	 *                            with FACE_DOWN set for the face-down cards
+	 * @param {Integer[]} sizes The number of cards of every pile
+	 * @throws IOException If a pile or a card is not valid
+	 */
+	static void check(int[][] piles, int[] sizes) throws IOException {
+		int stock = 0;
+		long seen = 0;
+
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			int size = sizes[pile];
+			if(size < 0 || size > capacity(pile))
+				throw new IOException("Corrupted save, bad size " + size + " of pile " + pile);
+			if(pile >= Table.STOCK) stock += size;
+
+			for(int i = 0; i < size; ++i) {
+				int card = piles[pile][i] & ~FACE_DOWN;
+				if(card < 0 || card >= Table.CARDS || (seen & 1L << card) != 0)
+					throw new IOException("Corrupted save, bad card " + card);
+				seen |= 1L << card;
+
+				// Foundations only keep their suit and size, the cards go up from the Ace
+				if(Table.isFoundation(pile) && (Table.suit(card) != Table.suit(piles[pile][0] & ~FACE_DOWN)
+						|| Table.rank(card) != i))
+					throw new IOException("Corrupted save, bad card " + card + " on foundation " + pile);
+			}
+		}
+		if(stock > Table.STOCK_CAPACITY) throw new IOException("Corrupted save, " + stock + " cards in the draw and get piles");
+	}
+
+	/**
+	 * Replaces the cards of a table with checked piles
+	 * @param {Integer[][]} piles
+	 * @param {Integer[]} sizes
+	 * @param {Table} table
+	 */
+	static void put(int[][] piles, int[] sizes, Table table) {
+		table.clear();
+
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			for(int i = 0; i < sizes[pile]; ++i)
+				table.push(pile, piles[pile][i] & ~FACE_DOWN, (piles[pile][i] & FACE_DOWN) != 0);
+		}
+	}
+
+	/**
+	 * Returns the most cards a pile of the table can hold
+	 */
+	static int capacity(int pile) {
+		if(Table.isTableau(pile)) return Table.COLUMN_CAPACITY;
+		if(Table.isFoundation(pile)) return Table.RANKS;
+		return Table.STOCK_CAPACITY;
+	}
+
+	/**
+	 * Checks the magic header
+	 */
+	public static boolean isSnapshot(byte[] in, int offset, int length) {
+		if(length < MAGIC.length) return false;
+
+		for(int i = 0; i < MAGIC.length; ++i) {
+			if(in[offset + i] != MAGIC[i]) return false;
+		}
+		return true;
+	}
+
+	static long crc(byte[] data, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,402 @@
+package solitaire;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides whether a deal can be won, starting from the current state of a Table.
+ * The solver knows the face-down cards, but only turns them face-up with a flip
+ * move, the same way the player does. The draw pile can be turned any number
+ * of times, positions that were already seen are not searched again.
+ *
+ * The first levels of the search are split into fork/join tasks, which share
+ * the transposition table of seen positions and the node budget. Below that, every task runs
+ * a depth first search on its own copy of the table using apply/undo.
+ */
+public class Solver {
+
+	public enum Status {Won, Lost, Unknown};
+
+	// Number of plies split into parallel tasks
+	static final int SPLIT_DEPTH = 3;
+
+	// Move ordering, lower is tried first
+	static final int PRIORITY_LEVELS = 5;
+
+	final int parallelism;
+	final long maxNodes;
+	final long maxMillis;
+
+	final TranspositionTable seen;
+	AtomicLong nodes;
+	AtomicReference<int[]> solution;
+	volatile boolean stop;
+	long deadline;
+	long elapsed;
+
+	// Changed by every cancel, a search stops when its ticket is out of date
+	final AtomicInteger generation = new AtomicInteger();
+	int ticket;
+
+	// Priority of the worker threads
+	int threadPriority = Thread.NORM_PRIORITY;
+
+	/**
+	 * Class constructor
+	 * @param {Integer} parallelism Number of worker threads
+	 * @param {Integer} maxNodes Maximum number of positions to search
+	 * @param {Integer} maxMillis Maximum search time, in milliseconds
+	 */
+	public Solver(int parallelism, long maxNodes, long maxMillis) {
+		this(parallelism, maxNodes, maxMillis, TranspositionTable.fromFlag());
+	}
+	
+	/**
+	 * Class constructor
+	 * @param {TranspositionTable} seen The table of seen positions, reused by every search
+	 */
+	public Solver(int parallelism, long maxNodes, long maxMillis, TranspositionTable seen) {
+		this.parallelism = parallelism;
+		this.maxNodes = maxNodes;
+		this.maxMillis = maxMillis;
+		this.seen = seen;
+	}
+
+	/**
+	 * Searches for a winning sequence of moves. The given table is not changed.
+	 * @param {Table} start
+	 * @return {Status} Won if a solution was found, Lost if the whole game
+	 *                  was searched, Unknown if the budget ran out first
+	 */
+	public Status solve(Table start) {
+		return solve(start, ticket());
+	}
+
+	/**
+	 * Searches for a winning sequence of moves, unless cancel was called
+	 * after the ticket was taken. Then it returns Unknown at once.
+	 * @param {Table} start
+	 * @param {Integer} ticket From ticket()
+	 * @return {Status}
+	 */
+	public Status solve(Table start, int ticket) {
+		seen.newSearch();
+		nodes = new AtomicLong();
+		solution = new AtomicReference<int[]>();
+		stop = false;
+		this.ticket = ticket;
+
+		long begin = System.currentTimeMillis();
+		deadline = begin + maxMillis;
+
+		Table root = new Table();
+		root.copyFrom(start);
+
+		if(root.isWon()) {
+			solution.set(new int[0]);
+		} else if(!stopped()) {
+			visit(root, 0);
+
+			ForkJoinPool pool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setPriority(threadPriority);
+					return thread;
+				}
+			}, null, false);
+			pool.invoke(new Search(root, new int[0]));
+			pool.shutdown();
+		}
+
+		elapsed = System.currentTimeMillis() - begin;
+
+		if(solution.get() != null) return Status.Won;
+		if(stopped()) return Status.Unknown;
+		return Status.Lost;
+	}
+
+	/**
+	 * Stops the running search as soon as possible, it returns Unknown.
+	 * Searches with a ticket taken before this call do not start.
+	 * Can be called from any thread.
+	 */
+	public void cancel() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Returns a ticket for solve, cancel makes it out of date
+	 */
+	public int ticket() {
+		return generation.get();
+	}
+
+	boolean stopped() {
+		return stop || generation.get() != ticket;
+	}
+
+	/**
+	 * Returns the winning moves found by the last search, or null
+	 */
+	public int[] solution() {
+		return solution.get();
+	}
+
+	public long nodes() {
+		return nodes.get();
+	}
+
+	/**
+	 * Returns the duration of the last search, in milliseconds
+	 */
+	public long elapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * Claims a position for the calling task.
+	 * Positions close to the root are kept longer in the table,
+	 * since they cut bigger parts of the search.
+	 * @param {Table} t
+	 * @param {Integer} ply Number of moves from the root
+	 * @return {Boolean} False if it was already searched
+	 */
+	boolean visit(Table t, int ply) {
+		if(!seen.claim(t.canonicalHash(), Math.max(0, 0xFFFF - ply))) return false;
+
+		long n = nodes.incrementAndGet();
+		if(n >= maxNodes || ((n & 0x3FF) == 0 && System.currentTimeMillis() > deadline))
+			stop = true;
+
+		return true;
+	}
+
+	void found(int[] path, int length) {
+		int[] moves = new int[length];
+		System.arraycopy(path, 0, moves, 0, length);
+
+		solution.compareAndSet(null, moves);
+		stop = true;
+	}
+
+	/**
+	 * Fills the buffer with the moves worth searching, best first.
+	 * A face-down top card is always turned first, moves that only swap
+	 * equivalent empty piles or move a King between empty columns are skipped.
+	 * @param {Table} t
+	 * @param {Integer[]} legal Scratch buffer for the legal moves
+	 * @param {Integer[]} out The buffer for the ordered moves
+	 * @param {Integer} offset Where to start writing in out
+	 * @return {Integer} Number of moves written
+	 */
+	static int candidates(Table t, int[] legal, int[] out, int offset) {
+		int n = t.legalMoves(legal);
+		int count = 0;
+
+		for(int level = 0; level < PRIORITY_LEVELS; ++level) {
+			for(int i = 0; i < n; ++i) {
+				int move = legal[i];
+
+				// Flipping can never hurt, it is the only move tried
+				if(Move.isFlip(move)) {
+					out[offset] = move;
+					return 1;
+				}
+
+				if(priority(t, move) == level)
+					out[offset + count++] = move;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the search order of a move, or PRIORITY_LEVELS to skip it
+	 */
+	static int priority(Table t, int move) {
+		int src = Move.src(move);
+		int dst = Move.dst(move);
+
+		if(Move.isDraw(move) || Move.isTurn(move)) return 4;
+
+		// Empty piles are all the same, only use the first one
+		if(t.size(dst) == 0) {
+			for(int p = Table.isFoundation(dst) ? Table.FOUNDATION : Table.TABLEAU; p < dst; ++p) {
+				if(t.size(p) == 0) return PRIORITY_LEVELS;
+			}
+		}
+
+		if(Table.isFoundation(dst)) return 0;
+		if(src == Table.WASTE) return 2;
+
+		int start = t.size(src) - Move.count(move);
+
+		// Moves that uncover a card or empty a column
+		if(start == t.faceDown(src)) {
+			if(start == 0 && t.size(dst) == 0) return PRIORITY_LEVELS;
+			return 1;
+		}
+
+		return 3;
+	}
+
+	/**
+	 * Searches all the positions reachable from a table
+	 */
+	class Search extends RecursiveAction {
+
+		final Table table;
+		final int[] prefix;
+
+		Search(Table table, int[] prefix) {
+			this.table = table;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected void compute() {
+			if(prefix.length >= SPLIT_DEPTH) {
+				search();
+				return;
+			}
+
+			int[] legal = new int[Move.MAX_MOVES];
+			int[] moves = new int[Move.MAX_MOVES];
+			int n = candidates(table, legal, moves, 0);
+
+			Search[] tasks = new Search[n];
+			int forked = 0;
+
+			for(int i = 0; i < n && !stopped(); ++i) {
+				Table next = new Table();
+				next.copyFrom(table);
+				next.apply(moves[i]);
+
+				int[] path = new int[prefix.length + 1];
+				System.arraycopy(prefix, 0, path, 0, prefix.length);
+				path[prefix.length] = moves[i];
+
+				if(next.isWon()) {
+					found(path, path.length);
+					return;
+				}
+
+				if(visit(next, path.length))
+					tasks[forked++] = new Search(next, path);
+			}
+
+			for(int i = 0; i < forked; ++i)
+				tasks[i].fork();
+			for(int i = 0; i < forked; ++i)
+				tasks[i].join();
+		}
+
+		/**
+		 * Depth first search with apply/undo, using explicit stacks
+		 */
+		void search() {
+			int[] legal = new int[Move.MAX_MOVES];
+			int[] stack = new int[Move.MAX_MOVES * 8];
+			int[] frameEnd = new int[64];
+			int[] next = new int[64];
+			int[] path = new int[64 + prefix.length];
+			System.arraycopy(prefix, 0, path, 0, prefix.length);
+
+			int depth = 0;
+			next[0] = 0;
+			frameEnd[0] = candidates(table, legal, stack, 0);
+
+			while(depth >= 0 && !stopped()) {
+				if(next[depth] == frameEnd[depth]) {
+					// All moves tried, go back up
+					if(depth > 0) table.undo(path[prefix.length + depth - 1]);
+					--depth;
+					continue;
+				}
+
+				int move = stack[next[depth]++];
+				table.apply(move);
+
+				if(table.isWon()) {
+					path[prefix.length + depth] = move;
+					found(path, prefix.length + depth + 1);
+					return;
+				}
+
+				if(!visit(table, prefix.length + depth + 1)) {
+					table.undo(move);
+					continue;
+				}
+
+				// Grow the stacks if needed
+				if(depth + 2 >= next.length) {
+					next = grow(next);
+					frameEnd = grow(frameEnd);
+					path = grow(path);
+				}
+				if(frameEnd[depth] + Move.MAX_MOVES > stack.length)
+					stack = grow(stack);
+
+				path[prefix.length + depth] = move;
+				++depth;
+				next[depth] = frameEnd[depth - 1];
+				frameEnd[depth] = next[depth] + candidates(table, legal, stack, next[depth]);
+			}
+		}
+	}
+
+	static int[] grow(int[] array) {
+		int[] bigger = new int[array.length * 2];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+	/**
+	 * Solves the deals 1 to N with 1 up to all the available cores
+	 * and prints the search speed.
+	 * Arguments: number of deals, node budget per deal.
+	 */
+	public static void main(String[] args) {
+		int deals = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		long budget = args.length > 1 ? Long.parseLong(args[1]) : 200000;
+
+		Table[] tables = new Table[deals];
+		for(int i = 0; i < deals; ++i) {
+			Engine game = new Engine();
+			game.resetCards(i + 1);
+			game.setupGame();
+			tables[i] = game.table;
+		}
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		double baseline = 0;
+
+		for(int threads = 1; threads <= cores; threads *= 2) {
+			Solver solver = new Solver(threads, budget, 60000);
+			long totalNodes = 0, totalMillis = 0;
+			int won = 0, lost = 0;
+
+			for(Table t : tables) {
+				Status status = solver.solve(t);
+				if(status == Status.Won) won++;
+				if(status == Status.Lost) lost++;
+
+				totalNodes += solver.nodes();
+				totalMillis += solver.elapsed();
+			}
+
+			double rate = totalNodes * 1000.0 / Math.max(1, totalMillis);
+			if(threads == 1) baseline = rate;
+
+			System.out.printf("%d threads: %d won, %d lost, %d unknown, %.0f nodes/s, speedup %.2f%n",
+					threads, won, lost, deals - won - lost, rate, rate / baseline);
+			System.out.printf("  table: %d entries, %d hits, %d misses, %d collisions%n",
+					solver.seen.capacity(), solver.seen.hits(), solver.seen.misses(), solver.seen.collisions());
+		}
+	}
+}
@@ -0,0 +1,555 @@
+package solitaire;
+
+import java.util.Arrays;
+
+/**
+ * Headless game state, packed into a single byte array.
+ * A card is stored as a byte ordinal: suit * 13 + rank, where the suit is
+ * the ordinal of Card.Suit and the rank is 0 for the Ace up to 12 for the King.
+ *
+ * Piles are identified by their index, in the order they are saved:
+ * the 7 tableau columns, the 4 foundations, the draw pile and the get pile.
+ * Only the cards below the face-down boundary of a column are hidden,
+ * the draw pile is always face-down and the other piles are always face-up.
+ *
+ * The class does not use any AWT or Swing classes, so the rules can run
+ * with java.awt.headless=true.
+ */
+public final class Table {
+
+	// Pile indexes
+	public static final int TABLEAU = 0;
+	public static final int FOUNDATION = 7;
+	public static final int STOCK = 11;
+	public static final int WASTE = 12;
+	public static final int PILES = 13;
+
+	public static final int COLUMNS = 7;
+	public static final int FOUNDATIONS = 4;
+	public static final int CARDS = 52;
+	public static final int RANKS = 13;
+
+	// A column holds at most 6 hidden cards and a King to Ace run
+	static final int COLUMN_CAPACITY = 19;
+	// Cards of the draw and the get piles together
+	static final int STOCK_CAPACITY = 24;
+
+	// Byte layout of the state.
+	// The get pile and the draw pile share one region: the get pile first,
+	// followed by the draw pile, so drawing a card only moves the boundary.
+	static final int COLUMN_CELLS = 0;
+	static final int STOCK_CELLS = COLUMN_CELLS + COLUMNS * COLUMN_CAPACITY;
+	static final int COLUMN_SIZE = STOCK_CELLS + STOCK_CAPACITY;
+	static final int COLUMN_DOWN = COLUMN_SIZE + COLUMNS;
+	static final int FOUNDATION_SIZE = COLUMN_DOWN + COLUMNS;
+	static final int FOUNDATION_SUIT = FOUNDATION_SIZE + FOUNDATIONS;
+	static final int WASTE_SIZE = FOUNDATION_SUIT + FOUNDATIONS;
+	static final int STOCK_SIZE = WASTE_SIZE + 1;
+	static final int SIZE = STOCK_SIZE + 1;
+
+	final byte[] data;
+	
+	// Zobrist hash of the state, updated on every change
+	long hash;
+
+	/**
+	 * Class constructor, creates an empty table
+	 */
+	public Table() {
+		data = new byte[SIZE];
+		clear();
+	}
+
+	/**
+	 * Encodes a card
+	 * @param {Integer} value The value of the card, in [1,14] without 11
+	 * @param {Integer} suit The ordinal of the suit
+	 * @return {Integer} The card ordinal, in [0,51]
+	 */
+	public static int card(int value, int suit) {
+		return suit * RANKS + (value <= 10 ? value - 1 : value - 2);
+	}
+
+	public static int rank(int card) {
+		return card % RANKS;
+	}
+
+	public static int suit(int card) {
+		return card / RANKS;
+	}
+
+	/**
+	 * Returns the value of the card, as used by Card (J is 12, K is 14)
+	 */
+	public static int value(int card) {
+		int rank = rank(card);
+		return rank <= 9 ? rank + 1 : rank + 2;
+	}
+
+	/**
+	 * Hearts and Diamonds are red
+	 */
+	public static boolean isRed(int card) {
+		int suit = suit(card);
+		return suit == 1 || suit == 2;
+	}
+
+	public static boolean isTableau(int pile) {
+		return pile < FOUNDATION;
+	}
+
+	public static boolean isFoundation(int pile) {
+		return pile >= FOUNDATION && pile < STOCK;
+	}
+
+	/**
+	 * Removes all the cards from the table
+	 */
+	public void clear() {
+		Arrays.fill(data, (byte)0);
+
+		for(int f = 0; f < FOUNDATIONS; ++f)
+			data[FOUNDATION_SUIT + f] = -1;
+		
+		hash = 0;
+	}
+
+	/**
+	 * Copies the whole state of another table
+	 * @param {Table} other
+	 */
+	public void copyFrom(Table other) {
+		System.arraycopy(other.data, 0, data, 0, SIZE);
+		hash = other.hash;
+	}
+
+	/**
+	 * Returns the number of cards in a pile
+	 * @param {Integer} pile
+	 */
+	public int size(int pile) {
+		if(pile < FOUNDATION) return data[COLUMN_SIZE + pile];
+		if(pile < STOCK) return data[FOUNDATION_SIZE + pile - FOUNDATION];
+		if(pile == STOCK) return data[STOCK_SIZE];
+		return data[WASTE_SIZE];
+	}
+
+	/**
+	 * Returns the card at the given position, 0 is the bottom of the pile.
+	 * For the draw pile, 0 is the next card to be drawn.
+	 * @param {Integer} pile
+	 * @param {Integer} i
+	 * @return {Integer} The card ordinal
+	 */
+	public int cardAt(int pile, int i) {
+		if(pile < FOUNDATION) return data[COLUMN_CELLS + pile * COLUMN_CAPACITY + i];
+		if(pile < STOCK) return data[FOUNDATION_SUIT + pile - FOUNDATION] * RANKS + i;
+		if(pile == STOCK) return data[STOCK_CELLS + data[WASTE_SIZE] + i];
+		return data[STOCK_CELLS + i];
+	}
+
+	/**
+	 * Returns the top card of a pile, or -1 if the pile is empty
+	 * @param {Integer} pile
+	 */
+	public int top(int pile) {
+		int size = size(pile);
+		if(size == 0) return -1;
+
+		return cardAt(pile, size - 1);
+	}
+
+	/**
+	 * Returns the number of face-down cards at the bottom of a pile
+	 * @param {Integer} pile
+	 */
+	public int faceDown(int pile) {
+		if(pile < FOUNDATION) return data[COLUMN_DOWN + pile];
+		if(pile == STOCK) return data[STOCK_SIZE];
+		return 0;
+	}
+
+	public boolean isFaceDown(int pile, int i) {
+		return i < faceDown(pile);
+	}
+
+	/**
+	 * Returns the suit accepted by a foundation, or -1 if it has none yet
+	 * @param {Integer} pile
+	 */
+	public int suitFilter(int pile) {
+		return data[FOUNDATION_SUIT + pile - FOUNDATION];
+	}
+
+	/**
+	 * Adds a card to the top of a pile, used to deal and load games.
+	 * No checking is done. Face-down cards must be pushed before face-up ones,
+	 * the face-down flag is ignored for piles other than the columns.
+	 * @param {Integer} pile
+	 * @param {Integer} card
+	 * @param {Boolean} isReversed
+	 */
+	public void push(int pile, int card, boolean isReversed) {
+		if(pile < FOUNDATION) {
+			int size = data[COLUMN_SIZE + pile];
+			data[COLUMN_CELLS + pile * COLUMN_CAPACITY + size] = (byte)card;
+			data[COLUMN_SIZE + pile] = (byte)(size + 1);
+			hash ^= Zobrist.columnCell(pile, size, card);
+
+			if(isReversed && data[COLUMN_DOWN + pile] == size)
+				setFaceDown(pile, size + 1);
+		} else if(pile < STOCK) {
+			int f = pile - FOUNDATION;
+			int size = data[FOUNDATION_SIZE + f];
+			int suit = suit(card);
+			hash ^= Zobrist.foundation(f, suit, size) ^ Zobrist.foundation(f, suit, size + 1);
+			
+			data[FOUNDATION_SUIT + f] = (byte)suit;
+			data[FOUNDATION_SIZE + f] = (byte)(size + 1);
+		} else if(pile == STOCK) {
+			int i = data[WASTE_SIZE] + data[STOCK_SIZE];
+			data[STOCK_CELLS + i] = (byte)card;
+			data[STOCK_SIZE]++;
+			hash ^= Zobrist.stockCell(i, card);
+		} else {
+			// Make room at the end of the get pile
+			int waste = data[WASTE_SIZE];
+			moveStock(waste, waste + 1);
+			data[STOCK_CELLS + waste] = (byte)card;
+			hash ^= Zobrist.stockCell(waste, card);
+			setWasteSize(waste + 1);
+		}
+	}
+
+	/**
+	 * Draw a card from the draw pile and place it into the get pile
+	 * @return {Boolean} False if the draw pile is empty
+	 */
+	public boolean draw() {
+		if(data[STOCK_SIZE] == 0) return false;
+
+		data[STOCK_SIZE]--;
+		setWasteSize(data[WASTE_SIZE] + 1);
+		return true;
+	}
+
+	/**
+	 * Reverse the get pile and place it again for draw.
+	 * Only possible once the draw pile is empty.
+	 * @return {Boolean} False if nothing was moved
+	 */
+	public boolean turnStock() {
+		if(data[STOCK_SIZE] != 0 || data[WASTE_SIZE] == 0) return false;
+
+		data[STOCK_SIZE] = data[WASTE_SIZE];
+		setWasteSize(0);
+		return true;
+	}
+
+	/**
+	 * If the top card of a column is face-down, turn it face-up
+	 * @param {Integer} pile
+	 * @return {Boolean} True if a card was turned
+	 */
+	public boolean flip(int pile) {
+		if(pile >= FOUNDATION) return false;
+
+		int size = data[COLUMN_SIZE + pile];
+		if(size == 0 || data[COLUMN_DOWN + pile] != size) return false;
+
+		setFaceDown(pile, size - 1);
+		return true;
+	}
+
+	void setFaceDown(int column, int down) {
+		hash ^= Zobrist.columnDown(column, data[COLUMN_DOWN + column]) ^ Zobrist.columnDown(column, down);
+		data[COLUMN_DOWN + column] = (byte)down;
+	}
+
+	void setWasteSize(int size) {
+		hash ^= Zobrist.wasteSize(data[WASTE_SIZE]) ^ Zobrist.wasteSize(size);
+		data[WASTE_SIZE] = (byte)size;
+	}
+
+	/**
+	 * Moves the cards of the draw pile inside the shared region,
+	 * the cells that are left free are zeroed
+	 * @param {Integer} from The current position of the draw pile
+	 * @param {Integer} to The new position of the draw pile
+	 */
+	void moveStock(int from, int to) {
+		int stock = data[STOCK_SIZE];
+
+		for(int i = 0; i < stock; ++i) {
+			int card = data[STOCK_CELLS + from + i];
+			hash ^= Zobrist.stockCell(from + i, card) ^ Zobrist.stockCell(to + i, card);
+		}
+
+		System.arraycopy(data, STOCK_CELLS + from, data, STOCK_CELLS + to, stock);
+		if(to < from)
+			Arrays.fill(data, STOCK_CELLS + to + stock, STOCK_CELLS + from + stock, (byte)0);
+	}
+
+	/**
+	 * Checks if the cards starting at the given position can be picked up.
+	 * Any face-up card of a column can be picked, but only the top card
+	 * of the get pile.
+	 * @param {Integer} pile
+	 * @param {Integer} start
+	 */
+	public boolean canPick(int pile, int start) {
+		int size = size(pile);
+
+		if(pile < FOUNDATION) return start >= faceDown(pile) && start < size;
+		if(pile == WASTE) return size > 0 && start == size - 1;
+		return false;
+	}
+
+	/**
+	 * Solitaire conditions to check if a move is valid,
+	 * the same conditions as Pile.acceptsPile
+	 * @param {Integer} src The pile the cards are taken from
+	 * @param {Integer} start The position of the first moved card
+	 * @param {Integer} dst The pile that receives the cards
+	 */
+	public boolean accepts(int src, int start, int dst) {
+		// Can not add to itself
+		if(src == dst) return false;
+
+		int newCard = cardAt(src, start);
+
+		if(dst < FOUNDATION) {
+			int size = data[COLUMN_SIZE + dst];
+
+			// If it's empty it can only receive a King
+			if(size == 0) return rank(newCard) == RANKS - 1;
+
+			// Top card must be face-up
+			if(data[COLUMN_DOWN + dst] == size) return false;
+
+			// Different color, consecutive values, descending
+			int topCard = data[COLUMN_CELLS + dst * COLUMN_CAPACITY + size - 1];
+			return isRed(topCard) != isRed(newCard) && rank(topCard) == rank(newCard) + 1;
+		}
+
+		if(dst < STOCK) {
+			// Merge with a single card
+			if(size(src) - start != 1) return false;
+
+			int f = dst - FOUNDATION;
+			int size = data[FOUNDATION_SIZE + f];
+
+			// Start with an ace
+			if(size == 0) return rank(newCard) == 0;
+
+			// Same suit, consecutive values, ascending
+			return data[FOUNDATION_SUIT + f] == suit(newCard) && rank(newCard) == size;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if a move can be done by the player
+	 */
+	public boolean canMove(int src, int start, int dst) {
+		return canPick(src, start) && accepts(src, start, dst);
+	}
+
+	/**
+	 * Fills the buffer with every move the player can make in this state.
+	 * Nothing is allocated, the same buffer can be reused for every call.
+	 * The moves agree with canMove, flip and the draw/turn actions.
+	 * @param {Integer[]} moves Buffer of at least Move.MAX_MOVES entries
+	 * @return {Integer} The number of moves written in the buffer
+	 */
+	public int legalMoves(int[] moves) {
+		int n = 0;
+		
+		for(int src = TABLEAU; src < FOUNDATION; ++src) {
+			int size = data[COLUMN_SIZE + src];
+			if(size == 0) continue;
+			
+			// A face-down top card can only be turned
+			if(data[COLUMN_DOWN + src] == size) {
+				moves[n++] = Move.flip(src);
+				continue;
+			}
+			
+			for(int start = data[COLUMN_DOWN + src]; start < size; ++start) {
+				// Only a single card can go to the foundations
+				int last = start == size - 1 ? STOCK : FOUNDATION;
+				
+				for(int dst = TABLEAU; dst < last; ++dst) {
+					if(dst == src) continue;
+					if(accepts(src, start, dst))
+						moves[n++] = Move.of(src, dst, size - start);
+				}
+			}
+		}
+		
+		int waste = data[WASTE_SIZE];
+		if(waste > 0) {
+			for(int dst = TABLEAU; dst < STOCK; ++dst) {
+				if(accepts(WASTE, waste - 1, dst))
+					moves[n++] = Move.of(WASTE, dst, 1);
+			}
+		}
+		
+		if(data[STOCK_SIZE] > 0)
+			moves[n++] = Move.of(STOCK, WASTE, 1);
+		else if(waste > 0)
+			moves[n++] = Move.of(WASTE, STOCK, waste);
+		
+		return n;
+	}
+
+	/**
+	 * Applies a move created by legalMoves. No checking is done.
+	 * @param {Integer} move
+	 */
+	public void apply(int move) {
+		int src = Move.src(move);
+		int dst = Move.dst(move);
+		
+		if(Move.isFlip(move)) {
+			setFaceDown(src, data[COLUMN_DOWN + src] - 1);
+		} else if(src == STOCK) {
+			draw();
+		} else if(dst == STOCK) {
+			turnStock();
+		} else {
+			move(src, size(src) - Move.count(move), dst);
+		}
+	}
+	
+	/**
+	 * Reverts a move done by apply, restoring the exact previous state.
+	 * Moves must be undone in the reverse order they were applied.
+	 * At most a column of cards is copied, so this runs in constant time.
+	 * @param {Integer} move
+	 */
+	public void undo(int move) {
+		int src = Move.src(move);
+		int dst = Move.dst(move);
+		
+		if(Move.isFlip(move)) {
+			setFaceDown(src, data[COLUMN_DOWN + src] + 1);
+		} else if(src == STOCK) {
+			data[STOCK_SIZE]++;
+			setWasteSize(data[WASTE_SIZE] - 1);
+		} else if(dst == STOCK) {
+			setWasteSize(data[STOCK_SIZE]);
+			data[STOCK_SIZE] = 0;
+		} else {
+			// The moved cards were face-up and go back above the face-down ones,
+			// an emptied foundation forgets its suit again
+			move(dst, size(dst) - Move.count(move), src);
+		}
+	}
+
+	/**
+	 * Moves the cards starting at the given position on top of another pile.
+	 * No checking is done, the moved cards are always face-up.
+	 * Only the columns, the foundations and the get pile are supported.
+	 * @param {Integer} src
+	 * @param {Integer} start
+	 * @param {Integer} dst
+	 */
+	public void move(int src, int start, int dst) {
+		int count = size(src) - start;
+
+		for(int i = 0; i < count; ++i)
+			push(dst, cardAt(src, start + i), false);
+
+		truncate(src, start);
+	}
+
+	/**
+	 * Removes all the cards above the given position
+	 * @param {Integer} pile
+	 * @param {Integer} size The new size of the pile
+	 */
+	void truncate(int pile, int size) {
+		if(pile < FOUNDATION) {
+			// Free cells are kept zeroed, so equal states have equal bytes
+			int cells = COLUMN_CELLS + pile * COLUMN_CAPACITY;
+			int oldSize = data[COLUMN_SIZE + pile];
+			
+			for(int i = size; i < oldSize; ++i)
+				hash ^= Zobrist.columnCell(pile, i, data[cells + i]);
+			Arrays.fill(data, cells + size, cells + oldSize, (byte)0);
+			
+			data[COLUMN_SIZE + pile] = (byte)size;
+			if(data[COLUMN_DOWN + pile] > size) setFaceDown(pile, size);
+		} else if(pile < STOCK) {
+			int f = pile - FOUNDATION;
+			int suit = data[FOUNDATION_SUIT + f];
+			hash ^= Zobrist.foundation(f, suit, data[FOUNDATION_SIZE + f]) ^ Zobrist.foundation(f, suit, size);
+			
+			data[FOUNDATION_SIZE + f] = (byte)size;
+			if(size == 0) data[FOUNDATION_SUIT + f] = -1;
+		} else if(pile == WASTE) {
+			int waste = data[WASTE_SIZE];
+			
+			for(int i = size; i < waste; ++i)
+				hash ^= Zobrist.stockCell(i, data[STOCK_CELLS + i]);
+			
+			// Close the gap left in front of the draw pile
+			moveStock(waste, size);
+			setWasteSize(size);
+		}
+	}
+
+	/**
+	 * Returns the 64-bit Zobrist hash of the state.
+	 * It is updated incrementally, so this is free.
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	/**
+	 * Returns a hash which is the same for positions that only differ
+	 * by the order of the columns or of the foundations.
+	 * Those positions play exactly the same, so searches can treat them as one.
+	 */
+	public long canonicalHash() {
+		long h = 0;
+
+		// Order independent sum of the column hashes
+		for(int col = 0; col < COLUMNS; ++col) {
+			int cells = COLUMN_CELLS + col * COLUMN_CAPACITY;
+			long c = Zobrist.stackDown(data[COLUMN_DOWN + col]);
+
+			for(int i = 0; i < data[COLUMN_SIZE + col]; ++i)
+				c ^= Zobrist.stackCell(i, data[cells + i]);
+
+			h += Zobrist.mix(c);
+		}
+
+		// Each suit is in at most one foundation
+		for(int f = 0; f < FOUNDATIONS; ++f) {
+			if(data[FOUNDATION_SIZE + f] > 0)
+				h ^= Zobrist.suitCount(data[FOUNDATION_SUIT + f], data[FOUNDATION_SIZE + f]);
+		}
+
+		int cards = data[WASTE_SIZE] + data[STOCK_SIZE];
+		for(int i = 0; i < cards; ++i)
+			h ^= Zobrist.stockCell(i, data[STOCK_CELLS + i]);
+
+		return h ^ Zobrist.wasteSize(data[WASTE_SIZE]);
+	}
+
+	/**
+	 * Tests wheter all the cards have been placed in the foundations
+	 * @return {Boolean}
+	 */
+	public boolean isWon() {
+		for(int f = 0; f < FOUNDATIONS; ++f) {
+			if(data[FOUNDATION_SIZE + f] != RANKS)
+				return false;
+		}
+		return true;
+	}
+}
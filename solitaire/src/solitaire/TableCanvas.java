@@ -0,0 +1,356 @@
+package solitaire;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+
+import solitaire.Card.Suit;
+
+/**
+ * Draws the whole table on a single component, instead of one component
+ * per card and pile. The cards to draw are kept in a scene list, rebuilt
+ * from the Table when the Engine sends a change, and the mouse is hit
+ * tested against the pile areas.
+ *
+ * Selected at startup with -Dsolitaire.renderer=canvas.
+ */
+public class TableCanvas extends JComponent implements Engine.Listener, MouseListener,
+		MouseMotionListener {
+
+	static final int CARD_WIDTH = 100;
+	static final int CARD_HEIGHT = 145;
+	static final int SLOT = 120;
+	static final int OFFSET = 15;
+	static final int MARGIN = 10;
+	static final int ROW = MARGIN + CARD_HEIGHT + 20;
+
+	final GUI gui;
+	final Engine game;
+	final Table table;
+
+	// The scene: the cards to draw, bottom first
+	final int[] sceneCard = new int[Table.CARDS];
+	final int[] sceneX = new int[Table.CARDS];
+	final int[] sceneY = new int[Table.CARDS];
+	final boolean[] sceneDown = new boolean[Table.CARDS];
+	final int[] sceneHeight = new int[Table.CARDS];
+	int sceneSize;
+
+	// Top left corner of every pile
+	final int[] pileX = new int[Table.PILES];
+	final int[] pileY = new int[Table.PILES];
+
+	// Cards being dragged: their pile, the first card and their image
+	int dragPile = -1;
+	int dragStart;
+	BufferedImage dragImage;
+	final Rectangle dragArea = new Rectangle();
+	final Rectangle dirty = new Rectangle();
+	int grabX, grabY;
+	int dropPile = -1;
+
+	// Move shown by the Hint action, or -1
+	int hintMove = -1;
+
+	/**
+	 * Class constructor
+	 * @param {GUI} gui The window, receives the moves made with the mouse
+	 * @param {Engine} game
+	 */
+	public TableCanvas(GUI gui, Engine game) {
+		this.gui = gui;
+		this.game = game;
+		this.table = game.table;
+
+		setOpaque(false);
+		game.addListener(this);
+		addMouseListener(this);
+		addMouseMotionListener(this);
+	}
+
+	/**
+	 * Places the piles for the current size: the draw pile, the get pile
+	 * and the foundations on top, the columns below
+	 */
+	@Override
+	public void doLayout() {
+		int left = Math.max(MARGIN, (getWidth() - Table.COLUMNS * SLOT) / 2);
+
+		for(int i = 0; i < Table.COLUMNS; ++i) {
+			pileX[Table.TABLEAU + i] = left + i * SLOT;
+			pileY[Table.TABLEAU + i] = ROW;
+		}
+		for(int i = 0; i < Table.FOUNDATIONS; ++i) {
+			pileX[Table.FOUNDATION + i] = left + (3 + i) * SLOT;
+			pileY[Table.FOUNDATION + i] = MARGIN;
+		}
+		pileX[Table.STOCK] = left;
+		pileX[Table.WASTE] = left + SLOT;
+		pileY[Table.STOCK] = pileY[Table.WASTE] = MARGIN;
+
+		rebuild();
+	}
+
+	static int offset(int pile) {
+		return Table.isTableau(pile) ? OFFSET : 0;
+	}
+
+	/**
+	 * Rebuilds the scene from the table. The dragged cards are left out,
+	 * they are drawn by their image. Only the top card of the piles without
+	 * offset is kept, and the covered cards of the columns only show a strip.
+	 */
+	void rebuild() {
+		sceneSize = 0;
+
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			int size = pile == dragPile ? dragStart : table.size(pile);
+			int first = offset(pile) == 0 ? Math.max(size - 1, 0) : 0;
+
+			for(int i = first; i < size; ++i) {
+				sceneCard[sceneSize] = table.cardAt(pile, i);
+				sceneX[sceneSize] = pileX[pile];
+				sceneY[sceneSize] = pileY[pile] + offset(pile) * i;
+				sceneDown[sceneSize] = table.isFaceDown(pile, i);
+				sceneHeight[sceneSize] = i == size - 1 ? CARD_HEIGHT : OFFSET + Card.CORNER;
+				sceneSize++;
+			}
+		}
+	}
+
+	/**
+	 * Repaints the area of a pile. Columns are repainted down to the bottom,
+	 * they may have been longer before.
+	 */
+	void repaintPile(int pile) {
+		int height = Table.isTableau(pile) ? getHeight() - pileY[pile] : CARD_HEIGHT;
+		repaint(pileX[pile], pileY[pile], CARD_WIDTH, height);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D)g;
+		Rectangle clip = g.getClipBounds();
+
+		// The empty pile placeholders
+		BufferedImage base = CardImages.face(100, Suit.Spades, CARD_WIDTH, CARD_HEIGHT, g2);
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			int size = pile == dragPile ? dragStart : table.size(pile);
+			if(size == 0 && visible(clip, pileX[pile], pileY[pile], CARD_HEIGHT))
+				CardImages.draw(g2, base, pileX[pile], pileY[pile], CARD_WIDTH, CARD_HEIGHT);
+		}
+
+		for(int i = 0; i < sceneSize; ++i) {
+			if(!visible(clip, sceneX[i], sceneY[i], sceneHeight[i])) continue;
+
+			BufferedImage image = image(sceneCard[i], sceneDown[i], g2);
+			if(sceneHeight[i] < CARD_HEIGHT)
+				CardImages.draw(g2, image, sceneX[i], sceneY[i], CARD_WIDTH, CARD_HEIGHT, sceneHeight[i]);
+			else
+				CardImages.draw(g2, image, sceneX[i], sceneY[i], CARD_WIDTH, CARD_HEIGHT);
+		}
+
+		if(hintMove != -1) paintHint(g);
+		if(dropPile != -1) paintFrame(g, Color.GREEN, dropPile, Math.max(table.size(dropPile), 1) - 1);
+		if(dragPile != -1) g.drawImage(dragImage, dragArea.x, dragArea.y, null);
+	}
+
+	static BufferedImage image(int card, boolean faceDown, Graphics2D g) {
+		if(faceDown) return CardImages.back(CARD_WIDTH, CARD_HEIGHT, g);
+		return CardImages.face(Table.value(card), Suit.values()[Table.suit(card)], CARD_WIDTH, CARD_HEIGHT, g);
+	}
+
+	static boolean visible(Rectangle clip, int x, int y, int height) {
+		return clip == null || (x < clip.x + clip.width && x + CARD_WIDTH > clip.x
+				&& y < clip.y + clip.height && y + height > clip.y);
+	}
+
+	/**
+	 * Draws a frame around a card of a pile
+	 */
+	void paintFrame(Graphics g, Color color, int pile, int i) {
+		Graphics2D g2 = (Graphics2D)g;
+		g2.setColor(color);
+		g2.setStroke(new BasicStroke(3));
+		g2.drawRect(pileX[pile] + 1, pileY[pile] + offset(pile) * i + 1, CARD_WIDTH - 3, CARD_HEIGHT - 3);
+	}
+
+	void paintHint(Graphics g) {
+		int src = Move.src(hintMove);
+		int dst = Move.dst(hintMove);
+
+		if(Move.isFlip(hintMove) || Move.isDraw(hintMove) || Move.isTurn(hintMove)) {
+			paintFrame(g, Color.YELLOW, src, table.size(src) - 1);
+			return;
+		}
+
+		paintFrame(g, Color.YELLOW, src, table.size(src) - Move.count(hintMove));
+		paintFrame(g, Color.YELLOW, dst, Math.max(table.size(dst), 1) - 1);
+	}
+
+	/**
+	 * Highlights the cards of a move, until the table changes
+	 * @param {Integer} move
+	 */
+	public void showHint(int move) {
+		hintMove = move;
+		repaint();
+	}
+
+	/**
+	 * Returns the pile at a point, or -1.
+	 * For drops the columns reach down to the bottom.
+	 */
+	int pileAt(int x, int y, boolean drop) {
+		for(int pile = 0; pile < Table.PILES; ++pile) {
+			if(x < pileX[pile] || x >= pileX[pile] + CARD_WIDTH || y < pileY[pile]) continue;
+
+			int height = CARD_HEIGHT + offset(pile) * Math.max(table.size(pile) - 1, 0);
+			if(drop && Table.isTableau(pile)) height = getHeight();
+
+			if(y < pileY[pile] + height) return pile;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the card at the given height of a pile, or -1
+	 */
+	int cardAt(int pile, int y) {
+		int size = table.size(pile);
+		if(size == 0) return -1;
+		if(offset(pile) == 0) return size - 1;
+
+		return Math.min(size - 1, (y - pileY[pile]) / OFFSET);
+	}
+
+	/**
+	 * Paints the dragged cards once into an image
+	 */
+	void renderDrag() {
+		int count = table.size(dragPile) - dragStart;
+		int width = CARD_WIDTH;
+		int height = CARD_HEIGHT + offset(dragPile) * (count - 1);
+
+		if(dragImage == null || dragImage.getWidth() < width || dragImage.getHeight() < height) {
+			GraphicsConfiguration config = getGraphicsConfiguration();
+			if(config != null)
+				dragImage = config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+			else
+				dragImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+
+		Graphics2D g = dragImage.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, dragImage.getWidth(), dragImage.getHeight());
+		g.setComposite(AlphaComposite.SrcOver);
+
+		for(int i = 0; i < count; ++i) {
+			int card = table.cardAt(dragPile, dragStart + i);
+			CardImages.draw(g, image(card, false, g), 0, offset(dragPile) * i, CARD_WIDTH, CARD_HEIGHT);
+		}
+		g.dispose();
+
+		dragArea.setSize(width, height);
+	}
+
+	public void pileChanged(int pile, int from, int to) {
+		clearHint();
+		rebuild();
+		repaintPile(pile);
+	}
+
+	public void cardFlipped(int pile, int i) {
+		clearHint();
+		rebuild();
+		repaintPile(pile);
+	}
+
+	public void stockCycled() {
+		clearHint();
+		rebuild();
+		repaintPile(Table.STOCK);
+		repaintPile(Table.WASTE);
+	}
+
+	public void tableChanged() {
+		hintMove = -1;
+		rebuild();
+		repaint();
+	}
+
+	void clearHint() {
+		if(hintMove == -1) return;
+
+		hintMove = -1;
+		repaint();
+	}
+
+	public void mousePressed(MouseEvent e) {
+		int pile = pileAt(e.getX(), e.getY(), false);
+		int i = pile == -1 ? -1 : cardAt(pile, e.getY());
+		if(!gui.pick(pile, i)) return;
+
+		dragPile = pile;
+		dragStart = i;
+		grabX = e.getX() - pileX[pile];
+		grabY = e.getY() - pileY[pile] - offset(pile) * i;
+
+		renderDrag();
+		dragArea.setLocation(e.getX() - grabX, e.getY() - grabY);
+
+		rebuild();
+		repaintPile(pile);
+	}
+
+	public void mouseDragged(MouseEvent e) {
+		if(dragPile == -1) return;
+
+		dirty.setBounds(dragArea);
+		dragArea.setLocation(e.getX() - grabX, e.getY() - grabY);
+
+		int target = pileAt(e.getX(), e.getY(), true);
+		if(target != -1 && !table.accepts(dragPile, dragStart, target)) target = -1;
+
+		if(target != dropPile) {
+			if(dropPile != -1) repaintPile(dropPile);
+			if(target != -1) repaintPile(target);
+			dropPile = target;
+		}
+
+		// Only where the cards were and where they are now
+		dirty.add(dragArea);
+		repaint(dirty);
+	}
+
+	public void mouseReleased(MouseEvent e) {
+		if(dragPile == -1) return;
+
+		int src = dragPile, start = dragStart, target = dropPile;
+		dragPile = -1;
+		dropPile = -1;
+		repaint(dragArea);
+
+		gui.drop(src, start, target);
+	}
+
+	public void mouseClicked(MouseEvent e) {
+		int pile = pileAt(e.getX(), e.getY(), false);
+		if(pile != -1) gui.click(pile, cardAt(pile, e.getY()), e.getClickCount());
+	}
+
+	public void mouseMoved(MouseEvent e) {}
+	public void mouseEntered(MouseEvent e) {}
+	public void mouseExited(MouseEvent e) {}
+}
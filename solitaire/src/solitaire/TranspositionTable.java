@@ -0,0 +1,236 @@
+package solitaire;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size hash table of searched positions, stored outside of the Java heap.
+ * Each entry is 16 bytes: the 64-bit position key and the packed search data
+ * (result, depth, age and best move). Entries are grouped in buckets of 4,
+ * a full bucket replaces the entry from an older search, then the one with
+ * the lowest depth. The depth is the value of the entry, higher is kept longer.
+ *
+ * The size is set with -Dsolitaire.tt.mb (default 64), the table is split into
+ * lock stripes so several solver threads can use it at the same time.
+ */
+public class TranspositionTable {
+
+	public static final int UNKNOWN = 0;
+	public static final int WON = 1;
+	public static final int LOST = 2;
+
+	// Returned by probe when the position is not in the table
+	public static final long MISS = -1;
+
+	static final int ENTRY_BYTES = 16;
+	static final int BUCKET_ENTRIES = 4;
+	static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+	static final int STRIPES = 256;
+
+	final ByteBuffer buffer;
+	final int bucketMask;
+	final Object[] locks;
+	volatile int age;
+
+	final AtomicLong hits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+	final AtomicLong collisions = new AtomicLong();
+
+	/**
+	 * Class constructor
+	 * @param {Integer} bytes Memory budget, rounded down to a power of two buckets
+	 */
+	public TranspositionTable(long bytes) {
+		long buckets = Long.highestOneBit(Math.max(bytes / BUCKET_BYTES, 1));
+		buckets = Math.min(buckets, Long.highestOneBit(Integer.MAX_VALUE / BUCKET_BYTES));
+
+		buffer = ByteBuffer.allocateDirect((int)(buckets * BUCKET_BYTES)).order(ByteOrder.nativeOrder());
+		bucketMask = (int)buckets - 1;
+
+		locks = new Object[STRIPES];
+		for(int i = 0; i < STRIPES; ++i)
+			locks[i] = new Object();
+
+		age = 1;
+	}
+
+	/**
+	 * Creates a table with the size given by the solitaire.tt.mb flag
+	 */
+	public static TranspositionTable fromFlag() {
+		return new TranspositionTable(Long.getLong("solitaire.tt.mb", 64) << 20);
+	}
+
+	/**
+	 * Packs the data stored for a position
+	 * @param {Integer} result UNKNOWN, WON or LOST
+	 * @param {Integer} depth Value of the entry, up to 65535
+	 * @param {Integer} move Best move found, or 0
+	 */
+	static long pack(int result, int depth, int age, int move) {
+		return (move & 0xFFFFFFFFL) | (long)(depth & 0xFFFF) << 32 | (long)(age & 0xFF) << 48
+				| (long)(result & 0x3) << 56;
+	}
+
+	public static int result(long data) {
+		return (int)(data >>> 56) & 0x3;
+	}
+
+	public static int depth(long data) {
+		return (int)(data >>> 32) & 0xFFFF;
+	}
+
+	static int age(long data) {
+		return (int)(data >>> 48) & 0xFF;
+	}
+
+	public static int move(long data) {
+		return (int)data;
+	}
+
+	/**
+	 * Starts a new search. Entries of the previous searches are not returned
+	 * anymore, and are replaced first.
+	 */
+	public void newSearch() {
+		synchronized(locks) {
+			if(++age > 0xFF) {
+				clear();
+				age = 1;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the entries
+	 */
+	public void clear() {
+		for(int i = 0; i < buffer.capacity(); i += 8)
+			buffer.putLong(i, 0);
+	}
+
+	/**
+	 * Looks for a position stored by the current search
+	 * @param {Long} key
+	 * @return {Long} The packed data, or MISS
+	 */
+	public long probe(long key) {
+		int bucket = bucket(key);
+
+		synchronized(lock(bucket)) {
+			int entry = find(bucket, key);
+
+			if(entry < 0) {
+				misses.incrementAndGet();
+				return MISS;
+			}
+
+			hits.incrementAndGet();
+			return buffer.getLong(entry + 8);
+		}
+	}
+
+	/**
+	 * Stores the data of a position, replacing the old data if any
+	 */
+	public void store(long key, int result, int depth, int move) {
+		int bucket = bucket(key);
+
+		synchronized(lock(bucket)) {
+			int entry = find(bucket, key);
+			if(entry < 0) entry = victim(bucket);
+
+			write(entry, key, result, depth, move);
+		}
+	}
+
+	/**
+	 * Stores a position only if it is not in the table yet
+	 * @return {Boolean} True if the position was stored, false if it was found
+	 */
+	public boolean claim(long key, int depth) {
+		int bucket = bucket(key);
+
+		synchronized(lock(bucket)) {
+			if(find(bucket, key) >= 0) {
+				hits.incrementAndGet();
+				return false;
+			}
+
+			misses.incrementAndGet();
+			write(victim(bucket), key, UNKNOWN, depth, 0);
+			return true;
+		}
+	}
+
+	int bucket(long key) {
+		return ((int)(key ^ key >>> 32) & bucketMask) * BUCKET_BYTES;
+	}
+
+	Object lock(int bucket) {
+		return locks[bucket / BUCKET_BYTES & (STRIPES - 1)];
+	}
+
+	/**
+	 * Returns the offset of the entry of the key in the current search, or -1
+	 */
+	int find(int bucket, long key) {
+		for(int entry = bucket; entry < bucket + BUCKET_BYTES; entry += ENTRY_BYTES) {
+			long data = buffer.getLong(entry + 8);
+
+			if(buffer.getLong(entry) == key && age(data) == age)
+				return entry;
+		}
+		return -1;
+	}
+
+	/**
+	 * Chooses the entry to replace: a free or old one, else the lowest depth
+	 */
+	int victim(int bucket) {
+		int best = bucket;
+		int bestScore = Integer.MAX_VALUE;
+
+		for(int entry = bucket; entry < bucket + BUCKET_BYTES; entry += ENTRY_BYTES) {
+			long data = buffer.getLong(entry + 8);
+			if(age(data) != age) return entry;
+
+			int score = depth(data);
+			if(score < bestScore) {
+				best = entry;
+				bestScore = score;
+			}
+		}
+
+		collisions.incrementAndGet();
+		return best;
+	}
+
+	void write(int entry, long key, int result, int depth, int move) {
+		buffer.putLong(entry, key);
+		buffer.putLong(entry + 8, pack(result, depth, age, move));
+	}
+
+	/**
+	 * Returns the number of entries the table can hold
+	 */
+	public long capacity() {
+		return (bucketMask + 1L) * BUCKET_ENTRIES;
+	}
+
+	public long hits() {
+		return hits.get();
+	}
+
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of stores that replaced another position
+	 */
+	public long collisions() {
+		return collisions.get();
+	}
+}
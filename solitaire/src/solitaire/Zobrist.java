@@ -0,0 +1,101 @@
+package solitaire;
+
+import java.util.Random;
+
+/**
+ * Random keys used to hash Table positions.
+ * The hash of a position is the XOR of the keys of everything it contains,
+ * so the Table can update it incrementally when a card moves or is turned.
+ *
+ * The column keys come in two sets: one bound to the column index for the
+ * exact hash, and one shared by all the columns for the canonical hash,
+ * which does not depend on the order of the columns or of the foundations.
+ */
+final class Zobrist {
+
+	static final int CARDS = Table.CARDS;
+	static final int CAPACITY = Table.COLUMN_CAPACITY;
+	static final int STOCK_CELLS = Table.COLUMN_SIZE - Table.STOCK_CELLS;
+	static final int SUITS = 4;
+
+	static final long[] COLUMN_CELL = new long[Table.COLUMNS * CAPACITY * CARDS];
+	static final long[] COLUMN_DOWN = new long[Table.COLUMNS * (CAPACITY + 1)];
+	static final long[] FOUNDATION = new long[Table.FOUNDATIONS * SUITS * (Table.RANKS + 1)];
+	static final long[] STOCK_CELL = new long[STOCK_CELLS * CARDS];
+	static final long[] WASTE_SIZE = new long[STOCK_CELLS + 1];
+
+	// Keys of the canonical hash
+	static final long[] STACK_CELL = new long[CAPACITY * CARDS];
+	static final long[] STACK_DOWN = new long[CAPACITY + 1];
+	static final long[] SUIT_COUNT = new long[SUITS * (Table.RANKS + 1)];
+
+	static {
+		// Fixed seed, so hashes are the same between runs
+		Random random = new Random(0x50717A1BE5L);
+
+		long[][] keys = {COLUMN_CELL, COLUMN_DOWN, FOUNDATION, STOCK_CELL, WASTE_SIZE,
+				STACK_CELL, STACK_DOWN, SUIT_COUNT};
+		for(long[] table : keys) {
+			for(int i = 0; i < table.length; ++i)
+				table[i] = random.nextLong();
+		}
+
+		// Empty piles do not change the hash, so an empty Table hashes to 0
+		for(int col = 0; col < Table.COLUMNS; ++col)
+			COLUMN_DOWN[col * (CAPACITY + 1)] = 0;
+		WASTE_SIZE[0] = 0;
+		STACK_DOWN[0] = 0;
+		for(int suit = 0; suit < SUITS; ++suit) {
+			SUIT_COUNT[suit * (Table.RANKS + 1)] = 0;
+			for(int f = 0; f < Table.FOUNDATIONS; ++f)
+				FOUNDATION[(f * SUITS + suit) * (Table.RANKS + 1)] = 0;
+		}
+	}
+
+	private Zobrist() {}
+
+	static long columnCell(int column, int i, int card) {
+		return COLUMN_CELL[(column * CAPACITY + i) * CARDS + card];
+	}
+
+	static long columnDown(int column, int down) {
+		return COLUMN_DOWN[column * (CAPACITY + 1) + down];
+	}
+
+	static long foundation(int f, int suit, int count) {
+		return FOUNDATION[(f * SUITS + suit) * (Table.RANKS + 1) + count];
+	}
+
+	static long stockCell(int i, int card) {
+		return STOCK_CELL[i * CARDS + card];
+	}
+
+	static long wasteSize(int size) {
+		return WASTE_SIZE[size];
+	}
+
+	static long stackCell(int i, int card) {
+		return STACK_CELL[i * CARDS + card];
+	}
+
+	static long stackDown(int down) {
+		return STACK_DOWN[down];
+	}
+
+	static long suitCount(int suit, int count) {
+		return SUIT_COUNT[suit * (Table.RANKS + 1) + count];
+	}
+
+	/**
+	 * Scrambles the hash of one column, so the sum of the columns
+	 * does not keep the structure of the keys
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}